@@ -0,0 +1,36 @@
+package tn.spring.pispring.Entities;
+
+import lombok.*;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(columnNames = {"siteId", "assetId"}))
+public class AssetSyncState {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    private String siteId;
+    private String assetId;
+
+    // Empreinte SHA-256 de la liste triée des IDs de vulnérabilités de l'asset
+    private String vulnerabilityFingerprint;
+
+    @Lob
+    @ToString.Exclude
+    private String vulnerabilityIds;
+
+    // Dernière synchronisation où l'asset figurait encore dans le site
+    private LocalDateTime lastSeenAt;
+
+    public AssetSyncState(String siteId, String assetId) {
+        this.siteId = siteId;
+        this.assetId = assetId;
+    }
+}
@@ -0,0 +1,54 @@
+package tn.spring.pispring.Entities;
+
+import lombok.*;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+@Entity
+@Table(indexes = @Index(name = "idx_mail_outbox_due", columnList = "status, nextAttemptAt"))
+public class MailOutbox {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    private String recipient;
+    private String subject;
+
+    @Lob
+    @ToString.Exclude
+    private String body;
+
+    @Enumerated(EnumType.STRING)
+    private MailStatus status;
+    private int attempts;
+    private LocalDateTime createdAt;
+    private LocalDateTime nextAttemptAt;
+    private LocalDateTime sentAt;
+
+    // Nœud qui a réservé le mail pour l'envoyer ; la réservation expire avec nextAttemptAt
+    @Column(length = 36)
+    private String claimToken;
+
+    @Column(length = 1000)
+    private String lastError;
+
+    public enum MailStatus {
+        PENDING,
+        SENT,
+        FAILED
+    }
+
+    public MailOutbox(String recipient, String subject, String body) {
+        this.recipient = recipient;
+        this.subject = subject;
+        this.body = body;
+        this.status = MailStatus.PENDING;
+        this.createdAt = LocalDateTime.now();
+        this.nextAttemptAt = this.createdAt;
+    }
+}
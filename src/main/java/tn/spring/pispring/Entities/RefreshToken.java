@@ -0,0 +1,38 @@
+package tn.spring.pispring.Entities;
+
+import lombok.*;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+@Entity
+@Table(indexes = {
+        @Index(name = "idx_refresh_token_family", columnList = "familyId"),
+        @Index(name = "idx_refresh_token_expiry", columnList = "expiresAt")
+})
+public class RefreshToken {
+    // jti du refresh token
+    @Id
+    private String jti;
+    // Tous les tokens issus d'une même connexion par rotations successives
+    private String familyId;
+    private String username;
+    private LocalDateTime issuedAt;
+    private LocalDateTime expiresAt;
+    private boolean revoked;
+    // jti du token émis en échange de celui-ci
+    private String replacedBy;
+
+    public RefreshToken(String jti, String familyId, String username, LocalDateTime expiresAt) {
+        this.jti = jti;
+        this.familyId = familyId;
+        this.username = username;
+        this.issuedAt = LocalDateTime.now();
+        this.expiresAt = expiresAt;
+    }
+}
@@ -0,0 +1,26 @@
+package tn.spring.pispring.Entities;
+
+import lombok.*;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+@Entity
+@Table(indexes = {
+        @Index(name = "idx_refresh_token_family_expiry", columnList = "expiresAt")
+})
+public class RefreshTokenFamily {
+    // Une famille par connexion, partagée par tous les tokens issus de ses rotations
+    @Id
+    private String familyId;
+    private String username;
+    // Déconnexion ou réutilisation d'un token consommé : plus aucun token de la famille n'est émis ni accepté
+    private boolean revoked;
+    // Expiration du dernier token émis dans la famille
+    private LocalDateTime expiresAt;
+}
@@ -2,6 +2,8 @@ package tn.spring.pispring.Entities;
 
 
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.NaturalId;
 import tn.spring.pispring.dto.RoleName;
 
@@ -9,6 +11,8 @@ import javax.persistence.*;
 
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "role")
 @Getter
 @Setter
 @AllArgsConstructor
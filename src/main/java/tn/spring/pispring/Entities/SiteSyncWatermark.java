@@ -0,0 +1,31 @@
+package tn.spring.pispring.Entities;
+
+import lombok.*;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+@Entity
+public class SiteSyncWatermark {
+    @Id
+    private String siteId;
+    private String siteName;
+
+    // lastScanTime du site InsightVM lors de la dernière synchronisation réussie
+    private String lastScanTime;
+    private LocalDateTime lastSyncedAt;
+
+    // Bail pris par le noeud qui synchronise le site (déploiement multi-noeuds)
+    private String claimedBy;
+    private LocalDateTime claimedUntil;
+
+    public SiteSyncWatermark(String siteId, String siteName) {
+        this.siteId = siteId;
+        this.siteName = siteName;
+    }
+}
@@ -3,6 +3,9 @@ package tn.spring.pispring.Entities;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonManagedReference;
 import lombok.*;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 import tn.spring.pispring.Entities.TicketStatusHistory;
 import tn.spring.pispring.Entities.User;
 
@@ -17,9 +20,30 @@ import java.util.List;
 @AllArgsConstructor
 @ToString
 @Entity
+// Tout ce que sérialise une liste de tickets : assigné et historique, en une requête (rôles de l'assigné par lots)
+@NamedEntityGraph(name = Ticket.LISTING_GRAPH, attributeNodes = {
+        @NamedAttributeNode("user"),
+        @NamedAttributeNode("statusHistory")
+})
+// Index créés par les migrations Flyway (db/migration), déclarés ici pour la lisibilité du mapping
+@Table(indexes = {
+        @Index(name = "idx_ticket_sla_due", columnList = "slaNotificationSent, status, slaDeadline"),
+        @Index(name = "idx_ticket_asset_id", columnList = "assetId"),
+        @Index(name = "idx_ticket_site_name", columnList = "siteName"),
+        @Index(name = "idx_ticket_status", columnList = "status"),
+        @Index(name = "idx_ticket_sla_claim_token", columnList = "slaClaimToken")
+})
 public class Ticket {
+    public static final String LISTING_GRAPH = "Ticket.listing";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Identifiants pré-alloués par blocs : IDENTITY désactive le batching JDBC de Hibernate
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "ticket_seq")
+    @GenericGenerator(name = "ticket_seq", strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator", parameters = {
+            @Parameter(name = "sequence_name", value = "ticket_seq"),
+            @Parameter(name = "increment_size", value = "50"),
+            @Parameter(name = "optimizer", value = "pooled-lo")
+    })
     private Long id;
     private String assetId;
     private String description;
@@ -33,9 +57,14 @@ public class Ticket {
     private boolean archived = false;
     private LocalDateTime slaDeadline;
     private boolean slaNotificationSent = false;
+    // Passage de checkTicketsSLA qui a réservé la notification
+    @JsonIgnore
+    @Column(length = 36)
+    private String slaClaimToken;
 
     // Relation OneToMany avec TicketStatusHistory
     @OneToMany(mappedBy = "ticket", cascade = CascadeType.ALL, orphanRemoval = true)
+    @BatchSize(size = 100)
     @JsonManagedReference
     private List<TicketStatusHistory> statusHistory = new ArrayList<>();
 
@@ -1,6 +1,8 @@
 package tn.spring.pispring.Entities;
 import com.fasterxml.jackson.annotation.JsonBackReference;
 import lombok.*;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 import javax.persistence.*;
 import java.time.LocalDateTime;
 @Getter
@@ -9,9 +11,18 @@ import java.time.LocalDateTime;
 @AllArgsConstructor
 @ToString
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_ticket_status_history_ticket_date", columnList = "ticket_id, changeDate"),
+        @Index(name = "idx_ticket_status_history_status_date", columnList = "status, changeDate")
+})
 public class TicketStatusHistory {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "ticket_status_history_seq")
+    @GenericGenerator(name = "ticket_status_history_seq", strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator", parameters = {
+            @Parameter(name = "sequence_name", value = "ticket_status_history_seq"),
+            @Parameter(name = "increment_size", value = "50"),
+            @Parameter(name = "optimizer", value = "pooled-lo")
+    })
     private Long id;
 
     @Enumerated(EnumType.STRING)
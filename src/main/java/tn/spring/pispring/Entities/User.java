@@ -2,6 +2,9 @@ package tn.spring.pispring.Entities;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.*;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import javax.persistence.*;
 import java.util.HashSet;
@@ -9,6 +12,12 @@ import java.util.List;
 import java.util.Set;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "user")
+@Table(uniqueConstraints = {
+        @UniqueConstraint(name = "uk_user_username", columnNames = "username"),
+        @UniqueConstraint(name = "uk_user_email", columnNames = "email")
+})
 @Getter
 @Setter
 @AllArgsConstructor
@@ -31,10 +40,15 @@ public class User {
     private String token;
     private String image;
 
+    // Incrémentée à chaque révocation : les access tokens portant une version plus ancienne sont refusés
+    private long tokenVersion;
+
 
 
 
     @ManyToMany(fetch = FetchType.LAZY)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "user-roles")
+    @BatchSize(size = 100)
     @ToString.Exclude
 
     @JoinTable(name = "user_roles",
@@ -25,6 +25,8 @@ public class UserPrinciple implements UserDetails {
     @JsonIgnore
     private String password;
     private Boolean isVerified;
+    private long tokenVersion;
+    private boolean blocked;
 
     private Collection<? extends GrantedAuthority> authorities;
 
@@ -39,26 +41,51 @@ public class UserPrinciple implements UserDetails {
         this.isVerified=isVerified;
     }
 
+    public UserPrinciple(Long id, String name, String username, String email, String password,
+                         Collection<? extends GrantedAuthority> authorities, Boolean isVerified, long tokenVersion) {
+        this(id, name, username, email, password, authorities, isVerified);
+        this.tokenVersion = tokenVersion;
+    }
+
     public static UserPrinciple build(User user) {
         List<GrantedAuthority> authorities = user.getRoles().stream().map(role ->
                 new SimpleGrantedAuthority(role.getName().name())
         ).collect(Collectors.toList());
 
-        return new UserPrinciple(
+        UserPrinciple principal = new UserPrinciple(
                 user.getId(),
                 user.getName(),
                 user.getUsername(),
                 user.getEmail(),
                 user.getPassword(),
                 authorities,
-                user.isValid()
+                user.isValid(),
+                user.getTokenVersion()
         );
+        principal.blocked = user.isBlocked();
+        return principal;
     }
 
     public Long getId() {
         return id;
     }
 
+    public String getName() {
+        return name;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public long getTokenVersion() {
+        return tokenVersion;
+    }
+
+    public boolean isBlocked() {
+        return blocked;
+    }
+
 
     @Override
     public String getUsername() {
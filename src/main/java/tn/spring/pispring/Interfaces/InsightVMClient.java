@@ -0,0 +1,19 @@
+package tn.spring.pispring.Interfaces;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+
+public interface InsightVMClient {
+
+    @FunctionalInterface
+    interface BodyReader<R> {
+        R read(InputStream body) throws IOException;
+    }
+
+    // Corps de la réponse, ou null si l'appel échoue ou ne renvoie pas 200
+    CompletableFuture<String> getAsync(String url);
+
+    // Lecture en flux du corps de la réponse, sur le thread appelant
+    <R> R read(String url, BodyReader<R> reader);
+}
@@ -0,0 +1,216 @@
+package tn.spring.pispring.ServiceIMP;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientException;
+import tn.spring.pispring.Interfaces.InsightVMClient;
+
+import javax.annotation.PreDestroy;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509ExtendedTrustManager;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Client InsightVM non bloquant (java.net.http) : les requêtes sont multiplexées sur quelques threads,
+ * le nombre de requêtes en vol étant borné par {@code insightvm.client.async.max-concurrency}.
+ * Les réponses sont décompressées et rendues sur un pool distinct : le parsing JSON/HTML des appelants
+ * ne tourne jamais sur les threads d'entrée-sortie. Activé avec {@code insightvm.client.mode=async}.
+ */
+@Component
+@ConditionalOnProperty(name = "insightvm.client.mode", havingValue = "async")
+public class AsyncInsightVMClient implements InsightVMClient {
+
+    private static final Logger LOGGER = Logger.getLogger(AsyncInsightVMClient.class.getName());
+
+    private final HttpClient httpClient;
+    private final ExecutorService eventLoop;
+    private final ExecutorService parser;
+    private final String authorization;
+    private final Duration readTimeout;
+    private final boolean compression;
+
+    // Sémaphore asynchrone : les requêtes en attente ne bloquent aucun thread
+    private final Object permitLock = new Object();
+    private final Queue<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+    private int availablePermits;
+
+    public AsyncInsightVMClient(@Value("${insightvm.api.user}") String apiUser,
+                                @Value("${insightvm.api.password}") String apiPassword,
+                                @Value("${insightvm.client.async.threads:2}") int threads,
+                                @Value("${insightvm.client.async.max-concurrency:256}") int maxConcurrency,
+                                @Value("${insightvm.client.async.parse-threads:4}") int parseThreads,
+                                @Value("${insightvm.http.connect-timeout-ms:5000}") long connectTimeoutMs,
+                                @Value("${insightvm.http.read-timeout-ms:30000}") long readTimeoutMs,
+                                @Value("${insightvm.http.compression:true}") boolean compression) {
+        this.eventLoop = Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("insightvm-async-"));
+        this.parser = Executors.newFixedThreadPool(parseThreads, new CustomizableThreadFactory("insightvm-parse-"));
+        this.httpClient = HttpClient.newBuilder()
+                .executor(eventLoop)
+                .sslContext(trustAllSslContext())
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .version(HttpClient.Version.HTTP_1_1)
+                .build();
+        this.authorization = "Basic " + Base64.getEncoder().encodeToString((apiUser + ":" + apiPassword).getBytes());
+        this.readTimeout = Duration.ofMillis(readTimeoutMs);
+        this.compression = compression;
+        this.availablePermits = maxConcurrency;
+    }
+
+    @Override
+    public CompletableFuture<String> getAsync(String url) {
+        return acquire()
+                .thenCompose(ignored -> httpClient.sendAsync(request(url), HttpResponse.BodyHandlers.ofByteArray()))
+                .whenComplete((response, error) -> release())
+                // Décodage sur le pool de parsing : les étapes suivantes de l'appelant y tournent aussi
+                .handleAsync((response, error) -> {
+                    if (error != null) {
+                        LOGGER.warning("InsightVM call failed: " + url + " - " + error.getMessage());
+                        return null;
+                    }
+                    if (response.statusCode() != 200) {
+                        LOGGER.warning("InsightVM call failed: " + url + " - " + response.statusCode());
+                        return null;
+                    }
+                    try (InputStream body = decoded(response, new ByteArrayInputStream(response.body()))) {
+                        return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+                    } catch (IOException e) {
+                        LOGGER.warning("InsightVM call failed: " + url + " - " + e.getMessage());
+                        return null;
+                    }
+                }, parser);
+    }
+
+    @Override
+    public <R> R read(String url, BodyReader<R> reader) {
+        acquire().join();
+        try {
+            HttpResponse<InputStream> response = httpClient.send(request(url), HttpResponse.BodyHandlers.ofInputStream());
+            try (InputStream body = response.body()) {
+                if (response.statusCode() >= 400) {
+                    throw new RestClientException("InsightVM returned " + response.statusCode() + " for " + url);
+                }
+                return reader.read(decoded(response, body));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RestClientException("Interrupted while calling " + url, e);
+        } finally {
+            release();
+        }
+    }
+
+    private HttpRequest request(String url) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                .timeout(readTimeout)
+                .header("Authorization", authorization)
+                .header("Accept", "application/json");
+        if (compression) {
+            // java.net.http ne décompresse pas : voir decoded()
+            builder.header("Accept-Encoding", "gzip");
+        }
+        return builder.GET().build();
+    }
+
+    private static InputStream decoded(HttpResponse<?> response, InputStream body) throws IOException {
+        boolean gzip = response.headers().firstValue("Content-Encoding").filter("gzip"::equalsIgnoreCase).isPresent();
+        return gzip ? new GZIPInputStream(body) : body;
+    }
+
+    private CompletableFuture<Void> acquire() {
+        synchronized (permitLock) {
+            if (availablePermits > 0) {
+                availablePermits--;
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<Void> waiter = new CompletableFuture<>();
+            waiters.add(waiter);
+            return waiter;
+        }
+    }
+
+    private void release() {
+        CompletableFuture<Void> next;
+        synchronized (permitLock) {
+            next = waiters.poll();
+            if (next == null) {
+                availablePermits++;
+            }
+        }
+        if (next != null) {
+            next.completeAsync(() -> null, eventLoop);
+        }
+    }
+
+    // Même politique que RestTemplateConfig : la console InsightVM utilise un certificat auto-signé
+    private static SSLContext trustAllSslContext() {
+        TrustManager trustAll = new X509ExtendedTrustManager() {
+            @Override
+            public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket) {
+            }
+
+            @Override
+            public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket) {
+            }
+
+            @Override
+            public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine) {
+            }
+
+            @Override
+            public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine) {
+            }
+
+            @Override
+            public void checkClientTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            @Override
+            public void checkServerTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            @Override
+            public X509Certificate[] getAcceptedIssuers() {
+                return new X509Certificate[0];
+            }
+        };
+        try {
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, new TrustManager[]{trustAll}, null);
+            return sslContext;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        eventLoop.shutdownNow();
+        parser.shutdownNow();
+    }
+}
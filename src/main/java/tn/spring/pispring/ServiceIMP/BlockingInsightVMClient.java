@@ -0,0 +1,59 @@
+package tn.spring.pispring.ServiceIMP;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.*;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+import tn.spring.pispring.Interfaces.InsightVMClient;
+
+import java.net.URI;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Logger;
+
+/**
+ * Client InsightVM par défaut : RestTemplate bloquant, exécuté sur le pool borné du crawler.
+ */
+@Component
+@ConditionalOnProperty(name = "insightvm.client.mode", havingValue = "blocking", matchIfMissing = true)
+public class BlockingInsightVMClient implements InsightVMClient {
+
+    private static final Logger LOGGER = Logger.getLogger(BlockingInsightVMClient.class.getName());
+
+    private final RestTemplate restTemplate;
+    private final InsightVMCrawler crawler;
+    private final HttpHeaders headers = new HttpHeaders();
+
+    public BlockingInsightVMClient(RestTemplate restTemplate, InsightVMCrawler crawler,
+                                   @Value("${insightvm.api.user}") String apiUser,
+                                   @Value("${insightvm.api.password}") String apiPassword) {
+        this.restTemplate = restTemplate;
+        this.crawler = crawler;
+        String auth = apiUser + ":" + apiPassword;
+        headers.set("Authorization", "Basic " + Base64.getEncoder().encodeToString(auth.getBytes()));
+    }
+
+    @Override
+    public CompletableFuture<String> getAsync(String url) {
+        return crawler.fetch(url, () -> {
+            try {
+                ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), String.class);
+                if (response.getStatusCode() == HttpStatus.OK) {
+                    return response.getBody();
+                }
+                LOGGER.warning("InsightVM call failed: " + url + " - " + response.getStatusCode());
+            } catch (Exception e) {
+                LOGGER.warning("InsightVM call failed: " + url + " - " + e.getMessage());
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public <R> R read(String url, BodyReader<R> reader) {
+        return restTemplate.execute(URI.create(url), HttpMethod.GET,
+                request -> request.getHeaders().putAll(headers),
+                response -> reader.read(response.getBody()));
+    }
+}
@@ -2,110 +2,165 @@ package tn.spring.pispring.ServiceIMP;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import tn.spring.pispring.Entities.MailStructure;
 import tn.spring.pispring.Entities.Ticket;
 import tn.spring.pispring.Entities.User;
 import tn.spring.pispring.repo.TicketRepository;
 import tn.spring.pispring.repo.UserRepository;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.mail.MessagingException;
-import javax.mail.internet.MimeMessage;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Map;
+import java.util.UUID;
 
 @Service
 public class EmailService {
 
-    @Autowired
-    private JavaMailSender mailSender;
-
     @Autowired
     private UserRepository userRepo;
 
     @Autowired
     private TicketRepository ticketRepo;
 
-    @Value("$(SecureFlow)")
-    private String fromMail;
+    @Autowired
+    private MailDispatcher mailDispatcher;
 
-    public void sendEmailWithSLA(Long ticketId, Long userId, MailStructure mailStructure) throws MessagingException {
-        User user = userRepo.findUserById(userId);
-        Ticket ticket = ticketRepo.findById(ticketId).orElseThrow(() -> new RuntimeException("Ticket not found"));
+    @Value("${sla.check.page-size:500}")
+    private int slaCheckPageSize;
 
-        int slaMinutes = getSLAMinutes(ticket.getSeverity());
-        long slaTimeMillis = slaMinutes * 60 * 1000;
+    @Value("${sla.wheel.tick-ms:1000}")
+    private long slaWheelTickMs;
 
-        Timer timer = new Timer();
-        int finalSlaMinutes = slaMinutes;
-        timer.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                try {
-                    Ticket ticket = ticketRepo.findById(ticketId).orElseThrow(() -> new RuntimeException("Ticket not found"));
-                    if (isTicketNotClosed(ticket)) {
-                        MimeMessage message = mailSender.createMimeMessage();
-                        MimeMessageHelper helper = new MimeMessageHelper(message, true);
-
-                        helper.setFrom(fromMail);
-                        helper.setTo(user.getEmail());
-                        helper.setSubject("SLA Expiry Notification for Ticket " + ticketId);
-                        helper.setText("The SLA for ticket " + ticketId + " has expired after " + finalSlaMinutes + " minutes. Please CLOSE your ticket.", true);
-
-                        mailSender.send(message);
-                        System.out.println("Follow-up email sent to " + user.getEmail() + " after SLA time of " + finalSlaMinutes + " minutes.");
-                    }
-                } catch (MessagingException e) {
-                    e.printStackTrace();
-                }
+    @Value("${sla.wheel.size:4096}")
+    private int slaWheelSize;
+
+    // Une seule roue pour toutes les échéances SLA, à la place d'un Timer (et d'un thread) par assignation
+    private SlaTimingWheel slaWheel;
+
+    @PostConstruct
+    public void startSlaWheel() {
+        slaWheel = new SlaTimingWheel(slaWheelTickMs, slaWheelSize, this::onSlaExpired);
+    }
+
+    @PreDestroy
+    public void stopSlaWheel() {
+        slaWheel.stop();
+    }
+
+    // Reprogrammer après un redémarrage les échéances persistées et pas encore notifiées
+    @EventListener(ApplicationReadyEvent.class)
+    public void reloadSlaDeadlines() {
+        long afterId = 0L;
+        List<Object[]> rows;
+        do {
+            rows = ticketRepo.findPendingSlaDeadlines(Ticket.TicketStatus.CLOSED, afterId, PageRequest.of(0, 10000));
+            for (Object[] row : rows) {
+                afterId = (Long) row[0];
+                scheduleSla(afterId, (LocalDateTime) row[1]);
             }
-        }, slaTimeMillis);
+        } while (!rows.isEmpty());
+        System.out.println("SLA deadlines reloaded: " + slaWheel.pendingCount());
     }
 
+    public void sendEmailWithSLA(Long ticketId, Long userId, MailStructure mailStructure) throws MessagingException {
+        Ticket ticket = ticketRepo.findById(ticketId).orElseThrow(() -> new RuntimeException("Ticket not found"));
+        startSla(ticket, getSLAMinutes(ticket.getSeverity()));
+    }
 
-    public void sendEmailOnTicketAssignment(Long ticketId, Long userId) {
-        try {
-            // Fetch the user and ticket details
-            User user = userRepo.findUserById(userId);
-            Ticket ticket = ticketRepo.findById(ticketId).orElseThrow(() -> new RuntimeException("Ticket not found"));
+    public void cancelSla(Long ticketId) {
+        slaWheel.cancel(ticketId);
+    }
 
-            // Determine the SLA based on ticket severity
-            String severity = ticket.getSeverity();
-            MailStructure mailStructure = new MailStructure();
-            mailStructure.setSubject("Ticket Assigned: " + severity + " Severity");
-            mailStructure.setMessage("A ticket with severity " + severity + " has been assigned to you. Please review it within the next " + getSLAMinutes(severity) + " minutes.");
+    public int getPendingSlaCount() {
+        return slaWheel.pendingCount();
+    }
 
-            // Send the initial email immediately
-            sendEmailImmediately(user.getEmail(), mailStructure);
+    public Map<String, Object> getMailStats() {
+        Map<String, Object> stats = mailDispatcher.getStats();
+        stats.put("pendingSlaDeadlines", getPendingSlaCount());
+        return stats;
+    }
 
-            // Schedule the follow-up email based on SLA time
-            sendEmailWithSLA(ticketId, userId, mailStructure);
+    // L'échéance est posée sur le ticket (l'appelant renvoie et publie un ticket à jour) et persistée
+    // pour survivre à un redémarrage ; la roue ne la reçoit qu'une fois la transaction commitée
+    private void startSla(Ticket ticket, int slaMinutes) {
+        LocalDateTime slaDeadline = LocalDateTime.now().plusMinutes(slaMinutes);
+        ticket.setSlaDeadline(slaDeadline);
+        ticket.setSlaNotificationSent(false);
+        ticketRepo.save(ticket);
+        scheduleSlaAfterCommit(ticket.getId(), slaDeadline);
+    }
 
-        } catch (Exception e) {
-            e.printStackTrace();
+    private void scheduleSlaAfterCommit(Long ticketId, LocalDateTime slaDeadline) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    scheduleSla(ticketId, slaDeadline);
+                }
+            });
+        } else {
+            scheduleSla(ticketId, slaDeadline);
         }
     }
 
+    private void scheduleSla(Long ticketId, LocalDateTime slaDeadline) {
+        slaWheel.schedule(ticketId, slaDeadline.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+    }
+
+    private void onSlaExpired(long ticketId) {
+        Ticket ticket = ticketRepo.findById(ticketId).orElse(null);
+        if (ticket == null || !isTicketNotClosed(ticket) || ticket.getUser() == null) {
+            return;
+        }
+        // checkTicketsSLA peut traiter le même ticket : un seul des deux envoie la notification
+        if (ticketRepo.claimSlaNotification(ticketId) == 0) {
+            return;
+        }
+        int slaMinutes = getSLAMinutes(ticket.getSeverity());
+        try {
+            mailDispatcher.enqueue(ticket.getUser().getEmail(),
+                    "SLA Expiry Notification for Ticket " + ticketId,
+                    "The SLA for ticket " + ticketId + " has expired after " + slaMinutes + " minutes. Please CLOSE your ticket.");
+            System.out.println("Follow-up email queued for " + ticket.getUser().getEmail() + " after SLA time of " + slaMinutes + " minutes.");
+        } catch (RuntimeException e) {
+            // Laisser checkTicketsSLA réessayer
+            ticketRepo.releaseSlaNotification(ticketId);
+            e.printStackTrace();
+        }
+    }
 
+    // Appelé dans la transaction de l'assignation : le mail n'est déposé que si l'assignation est validée
+    public void sendEmailOnTicketAssignment(Ticket ticket, User user) {
+        // Determine the SLA based on ticket severity
+        String severity = ticket.getSeverity();
+        int slaMinutes = getSLAMinutes(severity);
+        mailDispatcher.enqueue(user.getEmail(),
+                "Ticket Assigned: " + severity + " Severity",
+                "A ticket with severity " + severity + " has been assigned to you. Please review it within the next " + slaMinutes + " minutes.");
+
+        // Schedule the follow-up email based on SLA time
+        startSla(ticket, slaMinutes);
+    }
 
-    public void sendEmailImmediately(String toEmail, MailStructure mailStructure) throws MessagingException {
-        MimeMessage message = mailSender.createMimeMessage();
-        MimeMessageHelper helper = new MimeMessageHelper(message, true);
 
-        // Assurez-vous que 'fromMail' est correctement défini
-        helper.setFrom(fromMail);
-        helper.setTo(toEmail);
-        helper.setSubject(mailStructure.getSubject());
-        helper.setText(mailStructure.getMessage(), true);
 
-        mailSender.send(message);
-        System.out.println("Immediate email sent to " + toEmail);
+    // Le mail est déposé dans l'outbox : l'envoi SMTP se fait en arrière-plan (MailDispatcher)
+    public void sendEmailImmediately(String toEmail, MailStructure mailStructure) throws MessagingException {
+        mailDispatcher.enqueue(toEmail, mailStructure.getSubject(), mailStructure.getMessage());
+        System.out.println("Immediate email queued for " + toEmail);
     }
 
 
@@ -119,17 +174,30 @@ public class EmailService {
         LocalDateTime slaDeadline = LocalDateTime.now().plusMinutes(slaMinutes);
         ticket.setSlaDeadline(slaDeadline);
         ticketRepo.save(ticket);
+        scheduleSlaAfterCommit(ticket.getId(), slaDeadline);
     }
 
 
     // Scheduled task to check for tickets with expired SLA and status not closed
     @Scheduled(fixedRate = 60000) // Check every minute
     public void checkTicketsSLA() {
-        List<Ticket> tickets = ticketRepo.findAll();
         LocalDateTime now = LocalDateTime.now();
-
-        for (Ticket ticket : tickets) {
-            if (ticket.getSlaDeadline() != null && ticket.getSlaDeadline().isBefore(now) && isTicketNotClosed(ticket) && !ticket.isSlaNotificationSent()) {
+        long afterId = 0L;
+
+        // Seuls les ids des tickets échus sont lus, page par page via l'index (slaNotificationSent, status, slaDeadline)
+        List<Long> ids;
+        do {
+            ids = ticketRepo.findSlaDueIds(Ticket.TicketStatus.CLOSED, now, afterId, PageRequest.of(0, slaCheckPageSize));
+            if (ids.isEmpty()) {
+                break;
+            }
+            afterId = ids.get(ids.size() - 1);
+            // Une seule requête réserve la page ; onSlaExpired ou un autre nœud a pu en prendre une partie
+            String token = UUID.randomUUID().toString();
+            if (ticketRepo.claimSlaNotifications(ids, token) == 0) {
+                continue;
+            }
+            for (Ticket ticket : ticketRepo.findBySlaClaimToken(token)) {
                 try {
                     // Prepare the mail structure
                     MailStructure mailStructure = new MailStructure();
@@ -138,15 +206,13 @@ public class EmailService {
 
                     // Send email
                     sendEmailImmediately(ticket.getUser().getEmail(), mailStructure);
-
-                    // Mark SLA notification as sent
-                    ticket.setSlaNotificationSent(true);
-                    ticketRepo.save(ticket); // Save the updated ticket
-                } catch (MessagingException e) {
+                } catch (MessagingException | RuntimeException e) {
+                    // Réessayé au prochain passage
+                    ticketRepo.releaseSlaNotification(ticket.getId());
                     e.printStackTrace();
                 }
             }
-        }
+        } while (ids.size() == slaCheckPageSize);
     }
 
     private int getSLAMinutes(String severity) {
@@ -0,0 +1,104 @@
+package tn.spring.pispring.ServiceIMP;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Moteur de crawl InsightVM : répartit les appels HTTP (sites, assets, vulnérabilités)
+ * sur un pool borné, avec une limite de requêtes simultanées par hôte.
+ * Quand la file du pool est pleine, la tâche est exécutée par le thread appelant,
+ * ce qui ralentit naturellement le producteur (back-pressure).
+ */
+@Component
+public class InsightVMCrawler {
+
+    private final ThreadPoolExecutor fetchExecutor;
+    private final ThreadPoolExecutor siteExecutor;
+    private final int perHostLimit;
+    private final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+
+    public InsightVMCrawler(@Value("${insightvm.crawler.threads:8}") int threads,
+                            @Value("${insightvm.crawler.queue-capacity:500}") int queueCapacity,
+                            @Value("${insightvm.crawler.per-host-limit:8}") int perHostLimit,
+                            @Value("${insightvm.crawler.site-parallelism:2}") int siteParallelism) {
+        this.perHostLimit = perHostLimit;
+        this.fetchExecutor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new CustomizableThreadFactory("insightvm-fetch-"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        this.siteExecutor = new ThreadPoolExecutor(siteParallelism, siteParallelism, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new CustomizableThreadFactory("insightvm-site-"));
+    }
+
+    /**
+     * Exécute un appel vers l'API InsightVM sur le pool de fetch,
+     * en respectant la limite de concurrence de l'hôte ciblé par {@code url}.
+     */
+    public <T> CompletableFuture<T> fetch(String url, Supplier<T> call) {
+        Semaphore permits = hostPermits.computeIfAbsent(hostOf(url), host -> new Semaphore(perHostLimit));
+        return CompletableFuture.supplyAsync(() -> {
+            permits.acquireUninterruptibly();
+            try {
+                return call.get();
+            } finally {
+                permits.release();
+            }
+        }, fetchExecutor);
+    }
+
+    /**
+     * Combine plusieurs fetchs en conservant l'ordre de la liste d'origine.
+     */
+    public <T> CompletableFuture<List<T>> fetchAll(List<CompletableFuture<T>> futures) {
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .thenApply(ignored -> futures.stream().map(CompletableFuture::join).collect(Collectors.toList()));
+    }
+
+    /**
+     * Traite plusieurs sites en parallèle. Les sites ont leur propre pool afin qu'un thread
+     * de fetch n'attende jamais une tâche soumise dans son propre pool.
+     */
+    public <T> List<T> forEachSite(List<String> siteIds, Function<String, T> task) {
+        List<CompletableFuture<T>> futures = siteIds.stream()
+                .map(siteId -> CompletableFuture.supplyAsync(() -> task.apply(siteId), siteExecutor))
+                .collect(Collectors.toList());
+        return join(fetchAll(futures));
+    }
+
+    public <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private String hostOf(String url) {
+        try {
+            String host = URI.create(url).getHost();
+            return host != null ? host : url;
+        } catch (IllegalArgumentException e) {
+            return url;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        siteExecutor.shutdownNow();
+        fetchExecutor.shutdownNow();
+    }
+}
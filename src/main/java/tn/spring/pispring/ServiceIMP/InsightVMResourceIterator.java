@@ -0,0 +1,209 @@
+package tn.spring.pispring.ServiceIMP;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.web.util.UriComponentsBuilder;
+import tn.spring.pispring.Interfaces.InsightVMClient;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Parcourt une liste paginée de l'API InsightVM v3 ({@code resources}, {@code page}, {@code links}).
+ * Chaque page est lue au fil de l'eau avec l'API token de Jackson et la page suivante
+ * n'est demandée qu'une fois la précédente consommée : la mémoire reste bornée par la taille de page.
+ * {@link #collectAsync} parcourt la même liste sans bloquer de thread, via {@link InsightVMClient#getAsync}.
+ */
+public class InsightVMResourceIterator<T> implements Iterator<T> {
+
+    /**
+     * Lit une ressource ; le parser est positionné sur son START_OBJECT et doit être laissé sur son END_OBJECT.
+     */
+    @FunctionalInterface
+    public interface ResourceReader<T> {
+        T read(JsonParser parser) throws IOException;
+    }
+
+    public static final ResourceReader<String> ID_READER = parser -> {
+        String id = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("id".equals(field)) {
+                id = parser.getValueAsString();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return id;
+    };
+
+    public static ResourceReader<JsonNode> treeReader(ObjectMapper mapper) {
+        return mapper::readTree;
+    }
+
+    // Ressources d'une page et URL de la suivante (null pour la dernière)
+    private static final class Page<T> {
+        final List<T> resources;
+        final String nextUrl;
+
+        Page(List<T> resources, String nextUrl) {
+            this.resources = resources;
+            this.nextUrl = nextUrl;
+        }
+    }
+
+    private final InsightVMClient client;
+    private final ObjectMapper mapper;
+    private final ResourceReader<T> reader;
+    private final int pageSize;
+
+    private String nextUrl;
+    private Iterator<T> currentPage = Collections.emptyIterator();
+
+    public InsightVMResourceIterator(InsightVMClient client, String url, int pageSize,
+                                     ObjectMapper mapper, ResourceReader<T> reader) {
+        this.client = client;
+        this.mapper = mapper;
+        this.reader = reader;
+        this.pageSize = pageSize;
+        this.nextUrl = pageUrl(url, 0, pageSize);
+    }
+
+    /**
+     * Toutes les ressources de la liste, chaque page étant demandée par {@link InsightVMClient#getAsync}
+     * une fois la précédente lue ; null si une page n'a pas pu être obtenue.
+     */
+    public static <T> CompletableFuture<List<T>> collectAsync(InsightVMClient client, String url, int pageSize,
+                                                              ObjectMapper mapper, ResourceReader<T> reader) {
+        return collectFrom(client, pageUrl(url, 0, pageSize), pageSize, mapper, reader, new ArrayList<>());
+    }
+
+    private static <T> CompletableFuture<List<T>> collectFrom(InsightVMClient client, String url, int pageSize,
+                                                              ObjectMapper mapper, ResourceReader<T> reader, List<T> collected) {
+        // La page est lue sur le thread qui complète l'appel (pool de parsing du client asynchrone)
+        return client.getAsync(url).thenCompose(body -> {
+            if (body == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+            Page<T> page;
+            try (JsonParser parser = mapper.getFactory().createParser(body)) {
+                page = readPage(url, parser, pageSize, reader);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error reading InsightVM page " + url, e);
+            }
+            collected.addAll(page.resources);
+            return page.nextUrl != null
+                    ? collectFrom(client, page.nextUrl, pageSize, mapper, reader, collected)
+                    : CompletableFuture.completedFuture(collected);
+        });
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!currentPage.hasNext() && nextUrl != null) {
+            String url = nextUrl;
+            nextUrl = null;
+            Page<T> page = client.read(url, body -> {
+                try (JsonParser parser = mapper.getFactory().createParser(body)) {
+                    return readPage(url, parser, pageSize, reader);
+                }
+            });
+            nextUrl = page != null ? page.nextUrl : null;
+            currentPage = page != null ? page.resources.iterator() : Collections.emptyIterator();
+        }
+        return currentPage.hasNext();
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return currentPage.next();
+    }
+
+    private static <T> Page<T> readPage(String url, JsonParser parser, int pageSize, ResourceReader<T> reader) {
+        List<T> resources = new ArrayList<>(pageSize);
+        int pageNumber = -1;
+        int totalPages = -1;
+        String nextLink = null;
+
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return new Page<>(resources, null);
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if ("resources".equals(field) && token == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        T resource = reader.read(parser);
+                        if (resource != null) {
+                            resources.add(resource);
+                        }
+                    }
+                } else if ("page".equals(field) && token == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String pageField = parser.getCurrentName();
+                        parser.nextToken();
+                        if ("number".equals(pageField)) {
+                            pageNumber = parser.getValueAsInt(-1);
+                        } else if ("totalPages".equals(pageField)) {
+                            totalPages = parser.getValueAsInt(-1);
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                } else if ("links".equals(field) && token == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        String href = null;
+                        String rel = null;
+                        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                            String linkField = parser.getCurrentName();
+                            parser.nextToken();
+                            if ("href".equals(linkField)) {
+                                href = parser.getValueAsString();
+                            } else if ("rel".equals(linkField)) {
+                                rel = parser.getValueAsString();
+                            } else {
+                                parser.skipChildren();
+                            }
+                        }
+                        if ("next".equals(rel)) {
+                            nextLink = href;
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading InsightVM page " + url, e);
+        }
+
+        if (nextLink != null) {
+            return new Page<>(resources, nextLink);
+        }
+        if (pageNumber >= 0 && pageNumber + 1 < totalPages) {
+            return new Page<>(resources, pageUrl(url, pageNumber + 1, pageSize));
+        }
+        return new Page<>(resources, null);
+    }
+
+    private static String pageUrl(String url, int page, int pageSize) {
+        return UriComponentsBuilder.fromHttpUrl(url)
+                .replaceQueryParam("page", page)
+                .replaceQueryParam("size", pageSize)
+                .build(true)
+                .toUriString();
+    }
+}
@@ -2,29 +2,49 @@ package tn.spring.pispring.ServiceIMP;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
 import org.jsoup.Jsoup;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.*;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StreamUtils;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
+import tn.spring.pispring.Entities.AssetSyncState;
+import tn.spring.pispring.Entities.SiteSyncWatermark;
 import tn.spring.pispring.Entities.Ticket;
 import tn.spring.pispring.Entities.User;
 import tn.spring.pispring.Entities.Vulnerability;
 import tn.spring.pispring.Entities.VulnerabilityResponse;
+import tn.spring.pispring.Interfaces.InsightVMClient;
+import tn.spring.pispring.ServiceIMP.VulnerabilityDefinitionCache.VulnerabilityDefinition;
 import tn.spring.pispring.config.JWT.RestTemplateConfig;
+import tn.spring.pispring.dto.TicketDraft;
+import tn.spring.pispring.dto.TicketEvent;
+import tn.spring.pispring.repo.AssetSyncStateRepository;
+import tn.spring.pispring.repo.SiteSyncWatermarkRepository;
 import tn.spring.pispring.repo.TicketRepository;
 import tn.spring.pispring.repo.UserRepository;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -36,6 +56,28 @@ public class InsightVMService {
     TicketRepository ticketRepository;
     @Autowired
     UserRepository userRepository;
+    @Autowired
+    InsightVMCrawler crawler;
+    @Autowired
+    InsightVMClient insightVMClient;
+    @Autowired
+    VulnerabilityDefinitionCache vulnerabilityCache;
+    @Autowired
+    SiteSyncWatermarkRepository watermarkRepository;
+    @Autowired
+    AssetSyncStateRepository assetSyncStateRepository;
+    @Autowired
+    PoolingHttpClientConnectionManager connectionManager;
+    @Autowired
+    TicketIngestionWriter ticketWriter;
+    @Autowired
+    TicketEventBus ticketEventBus;
+    @Autowired
+    SiteRegistry siteRegistry;
+    @Autowired
+    TicketStatsService ticketStatsService;
+    @Autowired
+    EmailService emailService;
     private final RestTemplate restTemplate;
 
     @Value("${insightvm.api.url}")
@@ -46,6 +88,18 @@ public class InsightVMService {
 
     @Value("${insightvm.api.password}")
     private String apiPassword;
+
+    @Value("${insightvm.sync.lease-minutes:30}")
+    private long syncLeaseMinutes;
+
+    @Value("${insightvm.api.page-size:500}")
+    private int pageSize;
+
+    @Value("${insightvm.sync.asset-window:200}")
+    private int assetWindowSize;
+
+    // Identifie ce noeud dans les baux de synchronisation des sites
+    private final String nodeId = UUID.randomUUID().toString();
     private static final Logger LOGGER = Logger.getLogger(InsightVMService.class.getName());
     private final ObjectMapper mapper = new ObjectMapper();
 
@@ -59,13 +113,11 @@ public class InsightVMService {
 
     @Scheduled(fixedRate = 30000)
     public void scheduledScanAndSave() {
-        generateTicketsForAllSites();
-        getSiteInformation();
-
+        syncSites();
     }
     public List<Ticket> generateTicketsFromJson(String json) {
         ObjectMapper mapper = new ObjectMapper();
-        List<Ticket> tickets = new ArrayList<>();
+        List<TicketDraft> drafts = new ArrayList<>();
 
         try {
             JsonNode rootNode = mapper.readTree(json);
@@ -80,36 +132,21 @@ public class InsightVMService {
                         String assetId = vulnerabilityId; // Utiliser l'id de la vulnérabilité comme identifiant principal
 
                         try {
-                            String vulnerabilityUrl = apiUrl + "/vulnerabilities/" + vulnerabilityId;
-                            JsonNode vulnerabilityDetails = restTemplate.getForObject(vulnerabilityUrl, JsonNode.class);
+                            VulnerabilityDefinition vulnerabilityDetails = vulnerabilityCache.get(vulnerabilityId, this::getVulnerabilityDetails);
                             if (vulnerabilityDetails == null) {
                                 System.err.println("No details found for vulnerability ID: " + vulnerabilityId);
                                 continue;
                             }
 
-                            String severity = vulnerabilityDetails.path("severity").asText("None");
-                            String vector = vulnerabilityDetails.path("cvss").path("v2").path("vector").asText("N/A");
+                            String severity = vulnerabilityDetails.getSeverity("None");
+                            String vector = vulnerabilityDetails.getVector("N/A");
 
                             String remediationUrl = apiUrl + "/assets/" + assetId + "/vulnerabilities/" + vulnerabilityId + "/solution";
                             JsonNode remediationDetails = restTemplate.getForObject(remediationUrl, JsonNode.class);
                             String remediationSteps = remediationDetails.path("resources").get(0).path("steps").path("text").asText("No remediation steps provided.");
 
-                            Optional<Ticket> existingTicketOptional = Optional.ofNullable(ticketRepository.findByAssetId(assetId));
-                            if (existingTicketOptional.isPresent()) {
-                                Ticket existingTicket = existingTicketOptional.get();
-                                if (!existingTicket.getSeverity().equals(severity)) {
-                                    existingTicket.setSeverity(severity);
-                                    existingTicket.setDescription("Vulnerability Vector: " + vector);
-                                    existingTicket.setRemediation(remediationSteps);
-                                    ticketRepository.save(existingTicket);
-                                }
-                            } else {
-                                String description = "Vulnerability Vector: " + vector;
-                                Ticket newTicket = new Ticket(assetId, severity, description, remediationSteps);
-                                newTicket.addStatusChange(newTicket.getStatus());
-                                tickets.add(newTicket);
-                                ticketRepository.save(newTicket);
-                            }
+                            String description = "Vulnerability Vector: " + vector;
+                            drafts.add(new TicketDraft(assetId, assetId, severity, description, remediationSteps, null));
                         } catch (HttpServerErrorException e) {
                             System.err.println("Error fetching vulnerability details: " + e.getStatusCode() + " " + e.getResponseBodyAsString());
                         } catch (Exception e) {
@@ -122,64 +159,48 @@ public class InsightVMService {
             System.err.println("Error reading JSON: " + e.getMessage());
         }
 
-        return tickets;
+        // Un ticket existant n'est mis à jour que si sa sévérité a changé
+        return writeTickets(drafts, (existingTicket, draft) -> {
+            if (existingTicket.getSeverity().equals(draft.getSeverity())) {
+                return false;
+            }
+            existingTicket.setSeverity(draft.getSeverity());
+            existingTicket.setDescription(draft.getDescription());
+            existingTicket.setRemediation(draft.getRemediation());
+            return true;
+        });
     }
 
     public Ticket getTicketDetailsById(Long ticketId) { Optional<Ticket> ticketOptional = ticketRepository.findById(ticketId); return ticketOptional.orElse(null); }
 
 
 
-    private String getSites() {
-        String url = apiUrl + "/sites";
-        HttpHeaders headers = createHeaders(apiUser, apiPassword);
-        HttpEntity<String> entity = new HttpEntity<>(headers);
-
-        ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.GET, entity, String.class);
-        String responseBody = response.getBody();
-        System.out.println("Response from getSites: " + responseBody); // For debugging
-
-        return responseBody;
+    // Parcours de toutes les pages d'une liste InsightVM, lue en flux page par page
+    private <T> Iterable<T> pagedResources(String url, InsightVMResourceIterator.ResourceReader<T> reader) {
+        return () -> new InsightVMResourceIterator<>(insightVMClient, url, pageSize, mapper, reader);
     }
 
-    private String getAssetsForSite(String siteId) {
-        String url = apiUrl + "/sites/" + siteId + "/assets";
-        HttpHeaders headers = createHeaders(apiUser, apiPassword);
-        HttpEntity<String> entity = new HttpEntity<>(headers);
-
-        ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.GET, entity, String.class);
-        String responseBody = response.getBody();
-        System.out.println("Response from getAssetsForSite: " + responseBody); // For debugging
-
-        return responseBody;
+    private Iterable<JsonNode> getAssetsForSite(String siteId) {
+        return pagedResources(apiUrl + "/sites/" + siteId + "/assets", InsightVMResourceIterator.treeReader(mapper));
     }
 
     public List<String> getAssetIdsForSite(String siteId) {
-        String url = apiUrl + "/sites/" + siteId + "/assets";
-        HttpHeaders headers = createHeaders(apiUser, apiPassword);
-        HttpEntity<String> entity = new HttpEntity<>(headers);
-
-        ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.GET, entity, String.class);
-        String responseBody = response.getBody();
-        System.out.println("Response from getAssetsForSite: " + responseBody); // For debugging
-
         List<String> assetIds = new ArrayList<>();
         try {
-            ObjectMapper objectMapper = new ObjectMapper();
-            JsonNode rootNode = objectMapper.readTree(responseBody);
-            JsonNode resourcesNode = rootNode.path("resources");
-
-            if (resourcesNode.isArray()) {
-                for (JsonNode assetNode : resourcesNode) {
-                    String assetId = assetNode.path("id").asText();
-                    assetIds.add(assetId);
-                }
+            for (String assetId : assetIdsOfSite(siteId)) {
+                assetIds.add(assetId);
             }
-        } catch (IOException e) {
+        } catch (UncheckedIOException e) {
             System.err.println("Error parsing asset IDs: " + e.getMessage());
         }
 
         return assetIds;
     }
+
+    // Une erreur de lecture est propagée : une liste tronquée ferait passer des assets pour retirés du site
+    private Iterable<String> assetIdsOfSite(String siteId) {
+        return pagedResources(apiUrl + "/sites/" + siteId + "/assets", InsightVMResourceIterator.ID_READER);
+    }
     private String getVulnerabilitiesForAsset(String assetId) {
         String url = apiUrl + "/assets/" + assetId + "/vulnerabilities";
         HttpHeaders headers = createHeaders(apiUser, apiPassword);
@@ -211,6 +232,26 @@ public class InsightVMService {
         return null; // Return null if there was an error
     }
 
+    public String getCachedVulnerabilityDetails(String vulnId) {
+        VulnerabilityDefinition definition = vulnerabilityCache.get(vulnId, this::getVulnerabilityDetails);
+        return definition != null ? definition.getJson() : null;
+    }
+
+    public Map<String, Object> getVulnerabilityCacheStats() {
+        return vulnerabilityCache.getStats();
+    }
+
+    public Map<String, Object> getHttpPoolStats() {
+        PoolStats totalStats = connectionManager.getTotalStats();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("leased", totalStats.getLeased());
+        stats.put("available", totalStats.getAvailable());
+        stats.put("pending", totalStats.getPending());
+        stats.put("max", totalStats.getMax());
+        stats.put("routes", connectionManager.getRoutes().size());
+        return stats;
+    }
+
     private Map<String, String> extractVulnerabilityDetails(String responseBody) {
         Map<String, String> details = new HashMap<>();
         try {
@@ -230,29 +271,15 @@ public class InsightVMService {
         }
         return details;
     }
-    private List<String> getVulnerabilityIdsForAsset(String assetId) {
+    // null si la liste n'a pas pu être lue en entier : à distinguer d'un asset sans vulnérabilité
+    // Ids des vulnérabilités d'un asset, page par page sans bloquer de thread ; null si la liste n'a pas pu être lue
+    private CompletableFuture<List<String>> getVulnerabilityIdsForAsset(String assetId) {
         String url = String.format("%s/assets/%s/vulnerabilities", apiUrl, assetId);
-        HttpHeaders headers = createHeaders(apiUser, apiPassword);
-        HttpEntity<String> entity = new HttpEntity<>(headers);
-
-        try {
-            ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.GET, entity, String.class);
-            String responseBody = response.getBody();
-            List<String> vulnerabilityIds = new ArrayList<>();
-            JsonNode rootNode = mapper.readTree(responseBody);
-            JsonNode resourcesNode = rootNode.path("resources");
-
-            if (resourcesNode.isArray()) {
-                for (JsonNode vulnNode : resourcesNode) {
-                    String vulnId = vulnNode.path("id").asText();
-                    vulnerabilityIds.add(vulnId);
-                }
-            }
-            return vulnerabilityIds;
-        } catch (Exception e) {
-            System.err.println("Error fetching vulnerability IDs for asset: " + e.getMessage());
-            return new ArrayList<>();
-        }
+        return InsightVMResourceIterator.collectAsync(insightVMClient, url, pageSize, mapper, InsightVMResourceIterator.ID_READER)
+                .exceptionally(e -> {
+                    LOGGER.severe("Échec de lecture des vulnérabilités de l'asset " + assetId + " : " + e.getMessage());
+                    return null;
+                });
     }
     public String getRemediationDetails(String assetId, String vulnId) {
         String url = String.format("%s/assets/%s/vulnerabilities/%s/solution", apiUrl, assetId, vulnId);
@@ -273,56 +300,317 @@ public class InsightVMService {
         }
         return null;
     }
-    private Ticket createTicketWithDetails(String assetId, String vulnerabilityId, String siteName) {
+    // Détails d'une vulnérabilité récupérés par le crawler, avant la création du ticket
+    private static class VulnerabilityFetch {
+        final String assetId;
+        final String vulnerabilityId;
+        String ip;
+        String description;
+        String severity;
+        String remediationText;
+
+        VulnerabilityFetch(String assetId, String vulnerabilityId) {
+            this.assetId = assetId;
+            this.vulnerabilityId = vulnerabilityId;
+        }
+
+        boolean isComplete() {
+            return remediationText != null;
+        }
+    }
+
+    // Détails et remédiation d'une vulnérabilité, sans bloquer de thread en mode client asynchrone
+    private CompletableFuture<VulnerabilityFetch> fetchVulnerability(String assetId, String vulnerabilityId) {
+        VulnerabilityFetch fetch = new VulnerabilityFetch(assetId, vulnerabilityId);
+        String vulnerabilityUrl = String.format("%s/vulnerabilities/%s", apiUrl, vulnerabilityId);
+
+        // Récupération des détails de la vulnérabilité (partagés entre tous les assets)
+        return vulnerabilityCache.getAsync(vulnerabilityId, id -> insightVMClient.getAsync(vulnerabilityUrl))
+                .thenCompose(definition -> {
+                    if (definition == null) {
+                        LOGGER.severe("Aucun détail de vulnérabilité trouvé pour l'ID : " + vulnerabilityId);
+                        return CompletableFuture.completedFuture(fetch);
+                    }
+                    fetch.ip = definition.getId("");
+                    fetch.description = definition.getTitle("");
+                    fetch.severity = definition.getSeverity("");
+
+                    // Récupération des détails de la remédiation
+                    String remediationUrl = String.format("%s/assets/%s/vulnerabilities/%s/solution", apiUrl, assetId, vulnerabilityId);
+                    return insightVMClient.getAsync(remediationUrl).thenApply(remediationJson -> {
+                        if (remediationJson == null) {
+                            LOGGER.severe("Aucun détail de remédiation trouvé pour l'asset ID : " + assetId + " et la vulnérabilité ID : " + vulnerabilityId);
+                            return fetch;
+                        }
+                        try {
+                            JsonNode remediationNode = mapper.readTree(remediationJson);
+                            JsonNode resourcesNode = remediationNode.path("resources").get(0);
+                            JsonNode stepsNode = resourcesNode.path("steps");
+                            String remediationHtml = stepsNode.path("html").asText();
+
+                            fetch.remediationText = Jsoup.parse(remediationHtml).text();
+                            return fetch;
+                        } catch (IOException e) {
+                            LOGGER.severe("Erreur lors de la création du ticket avec les détails : " + e.getMessage());
+                            throw new RuntimeException("Erreur lors de la création du ticket avec les détails", e);
+                        }
+                    });
+                })
+                .exceptionally(e -> {
+                    // Fetch incomplet : l'asset sera repris à la prochaine synchronisation
+                    LOGGER.severe("Échec de récupération de la vulnérabilité " + vulnerabilityId + " de l'asset " + assetId + " : " + e.getMessage());
+                    return fetch;
+                });
+    }
+
+    private List<TicketDraft> toDrafts(List<VulnerabilityFetch> fetches, String siteName) {
+        List<TicketDraft> drafts = new ArrayList<>();
+        for (VulnerabilityFetch fetch : fetches) {
+            if (fetch.isComplete()) {
+                drafts.add(new TicketDraft(fetch.assetId, fetch.ip, fetch.severity, fetch.description, fetch.remediationText, siteName));
+            }
+        }
+        return drafts;
+    }
+
+    // Écrit les tickets par lots (une transaction et un batch JDBC par lot), dans l'ordre du parcours.
+    // Les événements d'un lot ne sont publiés qu'une fois sa transaction validée.
+    private List<Ticket> writeTickets(List<TicketDraft> drafts, TicketIngestionWriter.TicketMerger merger) {
+        List<Ticket> created = new ArrayList<>();
+        synchronized (ticketWriteLock) {
+            int chunkSize = ticketWriter.getChunkSize();
+            for (int from = 0; from < drafts.size(); from += chunkSize) {
+                List<Ticket> updated = new ArrayList<>();
+                List<Ticket> chunkCreated = ticketWriter.upsert(drafts.subList(from, Math.min(from + chunkSize, drafts.size())),
+                        (existing, draft) -> {
+                            boolean changed = merger.merge(existing, draft);
+                            if (changed) {
+                                updated.add(existing);
+                            }
+                            return changed;
+                        });
+                created.addAll(chunkCreated);
+                ticketEventBus.publishAll(TicketEvent.Type.CREATED, chunkCreated);
+                ticketEventBus.publishAll(TicketEvent.Type.UPDATED, updated);
+            }
+        }
+        return created;
+    }
+
+    // Récupère en parallèle les vulnérabilités de chaque asset, puis le détail de chaque vulnérabilité.
+    // L'ordre (asset, vulnérabilité) du parcours séquentiel est conservé.
+    private List<VulnerabilityFetch> crawlAssets(List<String> assetIds) {
+        return crawlVulnerabilities(crawlVulnerabilityIds(assetIds));
+    }
+
+    private Map<String, List<String>> crawlVulnerabilityIds(List<String> assetIds) {
+        List<CompletableFuture<List<String>>> perAsset = new ArrayList<>();
+        for (String assetId : assetIds) {
+            perAsset.add(getVulnerabilityIdsForAsset(assetId));
+        }
+        List<List<String>> vulnerabilityIds = crawler.join(crawler.fetchAll(perAsset));
+
+        Map<String, List<String>> vulnerabilityIdsByAsset = new LinkedHashMap<>();
+        for (int i = 0; i < assetIds.size(); i++) {
+            vulnerabilityIdsByAsset.put(assetIds.get(i), vulnerabilityIds.get(i));
+        }
+        return vulnerabilityIdsByAsset;
+    }
+
+    private List<VulnerabilityFetch> crawlVulnerabilities(Map<String, List<String>> vulnerabilityIdsByAsset) {
+        List<CompletableFuture<VulnerabilityFetch>> fetches = new ArrayList<>();
+        vulnerabilityIdsByAsset.forEach((assetId, vulnerabilityIds) -> {
+            if (vulnerabilityIds == null) {
+                return; // Liste non lue : rien à créer pour cet asset
+            }
+            for (String vulnerabilityId : vulnerabilityIds) {
+                fetches.add(fetchVulnerability(assetId, vulnerabilityId));
+            }
+        });
+        return crawler.join(crawler.fetchAll(fetches));
+    }
+
+    // Synchronisation incrémentale : un site n'est recrawlé que si son lastScanTime a avancé
+    // depuis le dernier watermark persisté, et seulement pour les assets dont les vulnérabilités ont changé.
+    public void syncSites() {
+        List<JsonNode> sites;
         try {
-            // Récupération des détails de la vulnérabilité
-            String vulnerabilityJson = getVulnerabilityDetails(vulnerabilityId);
-            if (vulnerabilityJson == null) {
-                LOGGER.severe("Aucun détail de vulnérabilité trouvé pour l'ID : " + vulnerabilityId);
-                return null;
+            // Lecture fraîche pour comparer les lastScanTime ; elle rafraîchit aussi le registre
+            sites = siteRegistry.refresh().getSites();
+        } catch (UncheckedIOException e) {
+            LOGGER.severe("Erreur de lecture de la liste des sites : " + e.getMessage());
+            return;
+        }
+
+        List<String> siteIds = new ArrayList<>();
+        Map<String, JsonNode> sitesById = new HashMap<>();
+        for (JsonNode siteNode : sites) {
+            String siteId = siteNode.path("id").asText();
+            siteIds.add(siteId);
+            sitesById.put(siteId, siteNode);
+        }
+
+        crawler.forEachSite(siteIds, siteId -> {
+            JsonNode siteNode = sitesById.get(siteId);
+            try {
+                syncSite(siteId, siteNode.path("name").asText(), siteNode.path("lastScanTime").asText(null));
+            } catch (RuntimeException e) {
+                LOGGER.severe("Erreur de synchronisation du site " + siteId + " : " + e.getMessage());
             }
+            return siteId;
+        });
+    }
 
-            JsonNode vulnerabilityNode = mapper.readTree(vulnerabilityJson);
-            String ip = vulnerabilityNode.path("id").asText();
-            String description = vulnerabilityNode.path("title").asText();
-            String severity = vulnerabilityNode.path("severity").asText();
+    private void syncSite(String siteId, String siteName, String lastScanTime) {
+        Optional<SiteSyncWatermark> watermark = watermarkRepository.findById(siteId);
+        if (watermark.isPresent() && Objects.equals(watermark.get().getLastScanTime(), lastScanTime)) {
+            return; // Aucun nouveau scan depuis la dernière synchronisation
+        }
+        boolean firstSync = !watermark.isPresent();
+        if (firstSync) {
+            try {
+                watermarkRepository.save(new SiteSyncWatermark(siteId, siteName));
+            } catch (DataIntegrityViolationException e) {
+                // Un autre noeud vient de créer le watermark : le bail tranchera
+            }
+        }
 
-            // Récupération des détails de la remédiation
-            String remediationJson = getRemediationDetails(assetId, vulnerabilityId);
-            if (remediationJson == null) {
-                LOGGER.severe("Aucun détail de remédiation trouvé pour l'asset ID : " + assetId + " et la vulnérabilité ID : " + vulnerabilityId);
-                return null;
+        LocalDateTime now = LocalDateTime.now();
+        if (watermarkRepository.claim(siteId, nodeId, now, now.plusMinutes(syncLeaseMinutes)) == 0) {
+            return; // Site en cours de synchronisation sur un autre noeud
+        }
+
+        try {
+            // Migration depuis l'ancien crawl complet : les tickets du site existent déjà,
+            // on enregistre seulement l'état des assets sans recréer de tickets.
+            boolean baselineOnly = firstSync && ticketRepository.existsBySiteName(siteName);
+            if (!syncChangedAssets(siteId, siteName, baselineOnly)) {
+                // Watermark inchangé : les assets en échec seront repris au prochain passage
+                LOGGER.warning("Synchronisation partielle du site " + siteId + ", reprise au prochain passage");
+                watermarkRepository.release(siteId, nodeId);
+                return;
             }
 
-            JsonNode remediationNode = mapper.readTree(remediationJson);
-            JsonNode resourcesNode = remediationNode.path("resources").get(0);
-            JsonNode stepsNode = resourcesNode.path("steps");
-            String remediationHtml = stepsNode.path("html").asText();
+            SiteSyncWatermark synced = watermarkRepository.findById(siteId).orElse(new SiteSyncWatermark(siteId, siteName));
+            synced.setSiteName(siteName);
+            synced.setLastScanTime(lastScanTime);
+            synced.setLastSyncedAt(LocalDateTime.now());
+            synced.setClaimedBy(null);
+            synced.setClaimedUntil(null);
+            watermarkRepository.save(synced);
+        } catch (RuntimeException e) {
+            watermarkRepository.release(siteId, nodeId);
+            throw e;
+        }
+    }
+
+    /**
+     * Crée les tickets des vulnérabilités apparues depuis la dernière synchronisation de chaque asset.
+     * Les assets sont traités par fenêtres de {@code insightvm.sync.asset-window} : listes, fetchs,
+     * tickets et états d'une fenêtre sont écrits avant de lire la suivante.
+     * L'état d'un asset n'est enregistré que si sa liste de vulnérabilités et tous ses fetchs ont abouti ;
+     * sinon il reste inchangé et l'asset est repris au prochain passage.
+     *
+     * @return false si au moins un asset n'a pas pu être traité en entier
+     */
+    private boolean syncChangedAssets(String siteId, String siteName, boolean baselineOnly) {
+        LocalDateTime syncStartedAt = LocalDateTime.now();
+        boolean[] complete = {true};
+        forEachWindow(assetIdsOfSite(siteId), window -> {
+            if (!syncAssetWindow(siteId, siteName, window, baselineOnly, syncStartedAt)) {
+                complete[0] = false;
+            }
+        });
+        // Assets retirés du site : la liste a été lue en entier, ceux qui n'ont pas été revus sont partis
+        assetSyncStateRepository.deleteNotSeenSince(siteId, syncStartedAt);
+        return complete[0];
+    }
 
-            String remediationText = Jsoup.parse(remediationHtml).text();
+    private boolean syncAssetWindow(String siteId, String siteName, List<String> assetIds, boolean baselineOnly,
+                                    LocalDateTime seenAt) {
+        Map<String, AssetSyncState> statesByAsset = new HashMap<>();
+        for (AssetSyncState state : assetSyncStateRepository.findBySiteIdAndAssetIdIn(siteId, assetIds)) {
+            statesByAsset.put(state.getAssetId(), state);
+        }
+        assetSyncStateRepository.markSeen(siteId, assetIds, seenAt);
+        Map<String, List<String>> vulnerabilityIdsByAsset = crawlVulnerabilityIds(assetIds);
+
+        // Ne garder que les vulnérabilités apparues depuis la dernière synchronisation de l'asset
+        Map<String, List<String>> newVulnerabilityIds = new LinkedHashMap<>();
+        Map<String, AssetSyncState> changedStates = new LinkedHashMap<>();
+        boolean[] complete = {true};
+        vulnerabilityIdsByAsset.forEach((assetId, vulnerabilityIds) -> {
+            AssetSyncState state = statesByAsset.get(assetId);
+            if (vulnerabilityIds == null) {
+                complete[0] = false;
+                return;
+            }
+            List<String> sortedIds = new ArrayList<>(new TreeSet<>(vulnerabilityIds));
+            String fingerprint = fingerprint(sortedIds);
+            if (state != null && fingerprint.equals(state.getVulnerabilityFingerprint())) {
+                return;
+            }
+            if (state == null) {
+                state = new AssetSyncState(siteId, assetId);
+            }
+            Set<String> knownIds = state.getVulnerabilityIds() == null || state.getVulnerabilityIds().isEmpty()
+                    ? Collections.emptySet()
+                    : new HashSet<>(Arrays.asList(state.getVulnerabilityIds().split(",")));
+            newVulnerabilityIds.put(assetId, vulnerabilityIds.stream()
+                    .filter(vulnerabilityId -> !knownIds.contains(vulnerabilityId))
+                    .distinct()
+                    .collect(Collectors.toList()));
+
+            state.setVulnerabilityFingerprint(fingerprint);
+            state.setVulnerabilityIds(String.join(",", sortedIds));
+            state.setLastSeenAt(seenAt);
+            changedStates.put(assetId, state);
+        });
+
+        if (!baselineOnly) {
+            List<VulnerabilityFetch> fetches = crawlVulnerabilities(newVulnerabilityIds);
+            writeTickets(toDrafts(fetches, siteName), this::updateTicket);
+            for (VulnerabilityFetch fetch : fetches) {
+                if (!fetch.isComplete() && changedStates.remove(fetch.assetId) != null) {
+                    complete[0] = false;
+                }
+            }
+        }
 
-            Optional<Ticket> existingTicketOpt = Optional.ofNullable(ticketRepository.findByAssetId(assetId));
-            Ticket ticket;
+        assetSyncStateRepository.saveAll(changedStates.values());
+        return complete[0];
+    }
 
-            if (existingTicketOpt.isPresent()) {
-                ticket = existingTicketOpt.get();
-                updateTicket(ticket, severity, description, remediationText);
-            } else {
-                Ticket newTicket = new Ticket(ip, severity, description, remediationText);
-                newTicket.setSiteName(siteName); // Assigner le siteName au ticket
-                ticketRepository.save(newTicket);
-                return newTicket;
+    // Découpe un parcours d'IDs en fenêtres de taille fixe : la mémoire dépend de la fenêtre, pas du site
+    private void forEachWindow(Iterable<String> ids, Consumer<List<String>> action) {
+        List<String> window = new ArrayList<>(assetWindowSize);
+        for (String id : ids) {
+            window.add(id);
+            if (window.size() == assetWindowSize) {
+                action.accept(window);
+                window = new ArrayList<>(assetWindowSize);
             }
+        }
+        if (!window.isEmpty()) {
+            action.accept(window);
+        }
+    }
 
-        } catch (IOException e) {
-            LOGGER.severe("Erreur lors de la création du ticket avec les détails : " + e.getMessage());
-            throw new RuntimeException("Erreur lors de la création du ticket avec les détails", e);
+    private String fingerprint(List<String> sortedIds) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(String.join(",", sortedIds).getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : hash) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
         }
-        return null;
     }
     public List<Ticket> createTicketsForSite(String siteId) {
         List<Ticket> tickets = new ArrayList<>();
-        List<String> assetIds = getAssetIdsForSite(siteId);
 
         // Vérifier si le site a déjà été traité
         if (processedSiteIds.contains(siteId)) {
@@ -331,25 +619,14 @@ public class InsightVMService {
             return null;
         }
 
-        // Récupérer la liste des sites à partir de l'API
-        String sitesJson = getSites(); // Méthode qui récupère les données de l'API
-        ObjectMapper mapper = new ObjectMapper();
-
         try {
-            JsonNode rootNode = mapper.readTree(sitesJson);
-            JsonNode sitesNode = rootNode.path("resources");
-
-            String siteName = null;
-
-            // Trouver le nom du site basé sur l'ID
-            if (sitesNode.isArray()) {
-                for (JsonNode siteNode : sitesNode) {
-                    String currentSiteId = siteNode.path("id").asText();
-                    if (siteId.equals(currentSiteId)) {
-                        siteName = siteNode.path("name").asText(); // Récupérer le nom du site
-                        break;
-                    }
-                }
+            // Nom du site depuis le registre en mémoire ; un site créé depuis le dernier instantané force une relecture
+            String siteName = siteRegistry.getSiteName(siteId);
+            if (siteName == null) {
+                siteName = siteRegistry.refresh().getSites().stream()
+                        .filter(siteNode -> siteId.equals(siteNode.path("id").asText()))
+                        .map(siteNode -> siteNode.path("name").asText())
+                        .findFirst().orElse(null);
             }
 
             // Vérifier si le nom du site a été trouvé
@@ -358,30 +635,20 @@ public class InsightVMService {
             }
 
             // Vérifier si des tickets existent déjà pour ce site
-            List<Ticket> existingTickets = ticketRepository.findBySiteName(siteName);
-            if (!existingTickets.isEmpty()) {
+            if (ticketRepository.existsBySiteName(siteName)) {
                 System.out.println("Tickets already exist for siteName " + siteName);
                 return null; // Si des tickets existent déjà, ne pas en créer de nouveaux
             }
 
-            // Créer les tickets pour chaque asset et chaque vulnérabilité
-            for (String assetId : assetIds) {
-                List<String> vulnerabilityIds = getVulnerabilityIdsForAsset(assetId);
-                for (String vulnerabilityId : vulnerabilityIds) {
-                    Ticket ticket = createTicketWithDetails(assetId, vulnerabilityId,siteName);
-                    if (ticket != null) {
-                        ticket.setSiteName(siteName); // Affecter le nom du site au ticket
-                        ticket.addStatusChange(ticket.getStatus());
-                        ticketRepository.save(ticket); // Sauvegarder le ticket
-                        tickets.add(ticket);
-                    }
-                }
-            }
+            // Par fenêtre d'assets : détails récupérés en parallèle, puis tickets créés dans l'ordre du parcours
+            String name = siteName;
+            forEachWindow(assetIdsOfSite(siteId),
+                    window -> tickets.addAll(writeTickets(toDrafts(crawlAssets(window), name), this::updateTicket)));
 
             // Ajouter l'ID du site au Set des sites traités pour éviter la duplication
             processedSiteIds.add(siteId);
 
-        } catch (IOException e) {
+        } catch (UncheckedIOException e) {
             e.printStackTrace();
             throw new RuntimeException("Error processing site information", e);
         }
@@ -389,7 +656,10 @@ public class InsightVMService {
         return tickets;
     }
 
-    private void updateTicket(Ticket ticket, String severity, String description, String remediation) {
+    private boolean updateTicket(Ticket ticket, TicketDraft draft) {
+        String severity = draft.getSeverity();
+        String description = draft.getDescription();
+        String remediation = draft.getRemediation();
         boolean updated = false;
 
         if (!ticket.getSeverity().equals(severity)) {
@@ -407,34 +677,29 @@ public class InsightVMService {
             updated = true;
         }
 
-        if (updated) {
-            ticketRepository.save(ticket);
-        }
+        return updated;
     }
-    private Set<String> processedSiteIds = new HashSet<>();
+    private final Set<String> processedSiteIds = ConcurrentHashMap.newKeySet();
+    // Les sites sont crawlés en parallèle, mais l'écriture des tickets reste sérialisée
+    private final Object ticketWriteLock = new Object();
     public List<Ticket> generateTicketsForAllSites() {
-        String sitesJson = getSites(); // Récupérer la liste des sites
-        ObjectMapper mapper = new ObjectMapper();
-
         try {
-            JsonNode rootNode = mapper.readTree(sitesJson);
-            JsonNode sitesNode = rootNode.path("resources");
-
-            if (sitesNode.isArray()) {
-                for (JsonNode siteNode : sitesNode) {
-                    String siteId = siteNode.path("id").asText();
-
-                    // Vérifier si le site a déjà été traité
-                    if (!processedSiteIds.contains(siteId)) {
-                        // Créer des tickets pour le site
-                        createTicketsForSite(siteId);
-
-                        // Ajouter l'ID du site au Set des sites traités
-                        processedSiteIds.add(siteId);
-                    }
+            List<String> pendingSiteIds = new ArrayList<>();
+            for (String siteId : siteRegistry.getSiteIds()) {
+                // Vérifier si le site a déjà été traité
+                if (!processedSiteIds.contains(siteId)) {
+                    pendingSiteIds.add(siteId);
                 }
             }
-        } catch (IOException e) {
+
+            // Créer des tickets pour chaque site, plusieurs sites à la fois
+            crawler.forEachSite(pendingSiteIds, siteId -> {
+                createTicketsForSite(siteId);
+                // Ajouter l'ID du site au Set des sites traités
+                processedSiteIds.add(siteId);
+                return siteId;
+            });
+        } catch (UncheckedIOException e) {
             e.printStackTrace();
         }
         return null;
@@ -443,85 +708,64 @@ public class InsightVMService {
 
 
     public List<Map<String, Object>> getSiteInformation() {
-        List<Map<String, Object>> siteInfos = new ArrayList<>();
-        String sitesJson = getSites();
-
-        ObjectMapper mapper = new ObjectMapper();
         try {
-            JsonNode rootNode = mapper.readTree(sitesJson);
-            JsonNode resourcesNode = rootNode.path("resources");
-
-            if (resourcesNode.isArray()) {
-                for (JsonNode siteNode : resourcesNode) {
-                    Map<String, Object> siteInfo = new HashMap<>();
-                    siteInfo.put("assets", siteNode.path("assets").asInt());
-                    siteInfo.put("description", siteNode.path("description").asText(null));
-                    siteInfo.put("importance", siteNode.path("importance").asText(null));
-                    siteInfo.put("lastScanTime", siteNode.path("lastScanTime").asText(null));
-                    siteInfo.put("name", siteNode.path("name").asText(null));
-                    siteInfos.add(siteInfo);
-                }
-            }
-        } catch (IOException e) {
+            return siteRegistry.snapshot().getSiteInformation();
+        } catch (UncheckedIOException e) {
             e.printStackTrace();
-            // Log and handle the exception appropriately
+            return new ArrayList<>();
         }
-
-        return siteInfos;
     }
 
     public List<Ticket> getTicketsBySiteId(String siteId) {
-        // Fetch assets for the site
-        String assetsJson = getAssetsForSite(siteId);
-        ObjectMapper mapper = new ObjectMapper();
-        List<String> assetIds = new ArrayList<>();
-
-        try {
-            JsonNode rootNode = mapper.readTree(assetsJson);
-            JsonNode resourcesNode = rootNode.path("resources");
-
-            if (resourcesNode.isArray()) {
-                for (JsonNode resource : resourcesNode) {
-                    JsonNode addressesNode = resource.path("addresses");
+        // Adresses IP des assets, cherchées par fenêtres pour borner la liste IN et la mémoire
+        Iterable<String> ips = () -> new Iterator<String>() {
+            private final Iterator<JsonNode> assets = getAssetsForSite(siteId).iterator();
+            private String next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && assets.hasNext()) {
+                    JsonNode addressesNode = assets.next().path("addresses");
                     if (addressesNode.isArray() && !addressesNode.isEmpty()) {
-                        JsonNode addressNode = addressesNode.get(0); // Assuming there is at least one address
-                        String ip = addressNode.path("ip").asText(null); // Default to null if not present
+                        String ip = addressesNode.get(0).path("ip").asText(null); // Default to null if not present
                         if (ip != null && !ip.isEmpty()) {
-                            assetIds.add(ip);
+                            next = ip;
                         }
                     }
                 }
+                return next != null;
             }
-        } catch (IOException e) {
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                String ip = next;
+                next = null;
+                return ip;
+            }
+        };
+
+        List<Ticket> tickets = new ArrayList<>();
+        try {
+            forEachWindow(ips, window -> tickets.addAll(ticketRepository.findDistinctByAssetIdIn(window)));
+        } catch (UncheckedIOException e) {
             e.printStackTrace();
         }
-
-        // Fetch tickets based on asset IDs
-        return ticketRepository.findTicketsByAssetIdIn(assetIds);
+        return tickets;
     }
 
     public String getSiteIdByName(String siteName) {
-        String sitesJson = getSites(); // Récupère la liste des sites
-        ObjectMapper mapper = new ObjectMapper();
-
         try {
-            JsonNode rootNode = mapper.readTree(sitesJson);
-            JsonNode sitesNode = rootNode.path("resources");
-
-            if (sitesNode.isArray()) {
-                for (JsonNode siteNode : sitesNode) {
-                    if (siteNode.path("name").asText().equals(siteName)) {
-                        return siteNode.path("id").asText(); // Retourne l'ID du site si le nom correspond
-                    }
-                }
-            }
-        } catch (IOException e) {
+            return siteRegistry.getSiteId(siteName); // null si le site avec ce nom n'existe pas
+        } catch (UncheckedIOException e) {
             e.printStackTrace();
         }
-        return null; // Retourne null si le site avec ce nom n'a pas été trouvé
+        return null;
     }
 
-    public List<Ticket> getTicketsBySiteName(String siteName) { return ticketRepository.findBySiteName(siteName); }
+    public List<Ticket> getTicketsBySiteName(String siteName) { return ticketRepository.findDistinctBySiteName(siteName); }
 
 
     private HttpHeaders createHeaders(String username, String password) {
@@ -534,11 +778,17 @@ public class InsightVMService {
         return headers;
     }
 
+    @Transactional
     public Ticket assignTicketToUser(Long ticketId, Long userId) {
         Ticket ticket = ticketRepository.findById(ticketId).orElseThrow(() -> new RuntimeException("Ticket not found"));
         User user = userRepository.findById(userId).orElseThrow(() -> new RuntimeException("User not found"));
+        TicketStatsService.Key before = TicketStatsService.Key.of(ticket);
         ticket.setUser(user);
-        return ticketRepository.save(ticket);
+        Ticket saved = ticketRepository.save(ticket);
+        ticketStatsService.recordChanged(before, saved);
+        emailService.sendEmailOnTicketAssignment(saved, user);
+        ticketEventBus.publish(TicketEvent.Type.ASSIGNED, saved);
+        return saved;
 
 
 
@@ -548,7 +798,8 @@ public class InsightVMService {
     }
 
     public List<Ticket> getTicketsByUserId(Long userId) {
-        User user = userRepository.findUserById(userId);
-        return ticketRepository.findTicketByUser(user);
+        // findById passe par le cache de second niveau, contrairement à une requête dérivée
+        User user = userRepository.findById(userId).orElse(null);
+        return ticketRepository.findDistinctByUser(user);
     }
 }
@@ -0,0 +1,201 @@
+package tn.spring.pispring.ServiceIMP;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import tn.spring.pispring.Entities.MailOutbox;
+import tn.spring.pispring.repo.MailOutboxRepository;
+
+import javax.mail.MessagingException;
+import javax.mail.internet.MimeMessage;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Envoi asynchrone des mails : les services déposent les messages dans la table outbox
+ * et ce dispatcher les envoie en arrière-plan. Chaque lot part sur une seule connexion SMTP ;
+ * plusieurs messages pour un même destinataire sont regroupés en un seul mail.
+ * Les échecs sont réessayés avec un délai exponentiel, jusqu'à un nombre maximal de tentatives.
+ * Un lot est d'abord réservé (jeton + bail sur nextAttemptAt) : avec plusieurs instances, chaque
+ * mail n'est envoyé que par celle qui l'a réservé, et un bail expiré le rend de nouveau disponible.
+ */
+@Service
+public class MailDispatcher {
+
+    private static final Logger LOGGER = Logger.getLogger(MailDispatcher.class.getName());
+
+    private final MailOutboxRepository outboxRepository;
+    private final JavaMailSender mailSender;
+    private final String fromMail;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final long backoffSeconds;
+    private final long leaseSeconds;
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong smtpSends = new AtomicLong();
+    private final AtomicLong totalLatencyMillis = new AtomicLong();
+    private final AtomicLong maxLatencyMillis = new AtomicLong();
+    private final AtomicLong lastBatchMillis = new AtomicLong();
+
+    public MailDispatcher(MailOutboxRepository outboxRepository,
+                          JavaMailSender mailSender,
+                          @Value("${mail.outbox.from:${spring.mail.username:}}") String fromMail,
+                          @Value("${mail.outbox.batch-size:100}") int batchSize,
+                          @Value("${mail.outbox.max-attempts:6}") int maxAttempts,
+                          @Value("${mail.outbox.backoff-seconds:30}") long backoffSeconds,
+                          @Value("${mail.outbox.lease-seconds:300}") long leaseSeconds) {
+        this.outboxRepository = outboxRepository;
+        this.mailSender = mailSender;
+        this.fromMail = fromMail;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.backoffSeconds = backoffSeconds;
+        this.leaseSeconds = leaseSeconds;
+    }
+
+    public MailOutbox enqueue(String recipient, String subject, String body) {
+        return outboxRepository.save(new MailOutbox(recipient, subject, body));
+    }
+
+    @Scheduled(fixedDelayString = "${mail.outbox.poll-ms:2000}")
+    public void dispatch() {
+        List<Long> due;
+        do {
+            LocalDateTime now = LocalDateTime.now();
+            due = outboxRepository.findDueIds(MailOutbox.MailStatus.PENDING, now, PageRequest.of(0, batchSize));
+            if (due.isEmpty()) {
+                break;
+            }
+            String token = UUID.randomUUID().toString();
+            if (outboxRepository.claim(due, MailOutbox.MailStatus.PENDING, now, token, now.plusSeconds(leaseSeconds)) > 0) {
+                sendBatch(outboxRepository.findByClaimTokenOrderByIdAsc(token));
+            }
+        } while (due.size() == batchSize);
+    }
+
+    private void sendBatch(List<MailOutbox> batch) {
+        Map<String, List<MailOutbox>> byRecipient = new LinkedHashMap<>();
+        for (MailOutbox mail : batch) {
+            byRecipient.computeIfAbsent(mail.getRecipient(), recipient -> new ArrayList<>()).add(mail);
+        }
+
+        Map<MimeMessage, List<MailOutbox>> messages = new LinkedHashMap<>();
+        byRecipient.forEach((recipient, mails) -> {
+            try {
+                messages.put(buildMessage(recipient, mails), mails);
+            } catch (MessagingException e) {
+                mails.forEach(mail -> markFailed(mail, e));
+            }
+        });
+
+        Map<Object, Exception> failures = new HashMap<>();
+        long start = System.currentTimeMillis();
+        if (!messages.isEmpty()) {
+            try {
+                // Une seule ouverture de Transport pour tout le lot
+                mailSender.send(messages.keySet().toArray(new MimeMessage[0]));
+            } catch (MailSendException e) {
+                failures.putAll(e.getFailedMessages());
+                if (failures.isEmpty()) {
+                    messages.keySet().forEach(message -> failures.put(message, e));
+                }
+            } catch (MailException e) {
+                messages.keySet().forEach(message -> failures.put(message, e));
+            }
+            smtpSends.incrementAndGet();
+        }
+        lastBatchMillis.set(System.currentTimeMillis() - start);
+
+        LocalDateTime now = LocalDateTime.now();
+        for (Map.Entry<MimeMessage, List<MailOutbox>> entry : messages.entrySet()) {
+            Exception cause = failures.get(entry.getKey());
+            if (cause != null) {
+                entry.getValue().forEach(mail -> markFailed(mail, cause));
+            } else {
+                entry.getValue().forEach(mail -> markSent(mail, now));
+            }
+        }
+        outboxRepository.saveAll(batch);
+    }
+
+    private MimeMessage buildMessage(String recipient, List<MailOutbox> mails) throws MessagingException {
+        MimeMessage message = mailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(message, true);
+        if (!fromMail.isEmpty()) {
+            helper.setFrom(fromMail);
+        }
+        helper.setTo(recipient);
+
+        if (mails.size() == 1) {
+            helper.setSubject(mails.get(0).getSubject());
+            helper.setText(mails.get(0).getBody(), true);
+        } else {
+            StringBuilder body = new StringBuilder();
+            for (MailOutbox mail : mails) {
+                body.append("<h3>").append(mail.getSubject()).append("</h3>")
+                        .append("<p>").append(mail.getBody()).append("</p>");
+            }
+            helper.setSubject(mails.size() + " SecureFlow notifications");
+            helper.setText(body.toString(), true);
+        }
+        return message;
+    }
+
+    private void markSent(MailOutbox mail, LocalDateTime now) {
+        mail.setStatus(MailOutbox.MailStatus.SENT);
+        mail.setSentAt(now);
+        mail.setAttempts(mail.getAttempts() + 1);
+        mail.setLastError(null);
+        mail.setClaimToken(null);
+
+        long latency = Duration.between(mail.getCreatedAt(), now).toMillis();
+        totalLatencyMillis.addAndGet(latency);
+        maxLatencyMillis.accumulateAndGet(latency, Math::max);
+        sent.incrementAndGet();
+    }
+
+    private void markFailed(MailOutbox mail, Exception cause) {
+        int attempts = mail.getAttempts() + 1;
+        mail.setAttempts(attempts);
+        mail.setClaimToken(null);
+        mail.setLastError(cause == null ? null : truncate(cause.getMessage()));
+        if (attempts >= maxAttempts) {
+            mail.setStatus(MailOutbox.MailStatus.FAILED);
+            failed.incrementAndGet();
+            LOGGER.severe("Abandon de l'envoi du mail " + mail.getId() + " à " + mail.getRecipient() + " après " + attempts + " tentatives");
+        } else {
+            long delay = backoffSeconds << Math.min(attempts - 1, 10);
+            mail.setNextAttemptAt(LocalDateTime.now().plusSeconds(delay));
+            retried.incrementAndGet();
+        }
+    }
+
+    private String truncate(String message) {
+        return message != null && message.length() > 1000 ? message.substring(0, 1000) : message;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long sentCount = sent.get();
+        stats.put("queueDepth", outboxRepository.countByStatus(MailOutbox.MailStatus.PENDING));
+        stats.put("sent", sentCount);
+        stats.put("retried", retried.get());
+        stats.put("failed", failed.get());
+        stats.put("smtpSends", smtpSends.get());
+        stats.put("avgLatencyMillis", sentCount == 0 ? 0 : totalLatencyMillis.get() / sentCount);
+        stats.put("maxLatencyMillis", maxLatencyMillis.get());
+        stats.put("lastBatchMillis", lastBatchMillis.get());
+        return stats;
+    }
+}
@@ -2,8 +2,10 @@ package tn.spring.pispring.ServiceIMP;
 
 import tn.spring.pispring.Entities.User;
 
-import lombok.AllArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import tn.spring.pispring.Interfaces.OTPInterface;
 
@@ -11,12 +13,13 @@ import tn.spring.pispring.dto.OTP;
 import tn.spring.pispring.repo.OTPRepository;
 import tn.spring.pispring.repo.UserRepository;
 
+import java.security.SecureRandom;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.List;
 import java.util.Optional;
 import java.util.Random;
 @Service
-@AllArgsConstructor
 
 public class OTPServiceIMP implements OTPInterface {
     @Autowired
@@ -24,12 +27,19 @@ public class OTPServiceIMP implements OTPInterface {
 
 @Autowired
 UserRepository userRepository;
+
+    @Value("${otp.purge.batch-size:1000}")
+    private int purgeBatchSize;
+
+    private final Random random = new SecureRandom();
     @Override
     public OTP GenerateOTp() {
-        // Generate a 6-digit OTP
-        Random random = new Random();
-        int otp = 100000 + random.nextInt(900000);
+        // Generate a 6-digit OTP, distinct from the codes still valid
         Date now = new Date();
+        int otp;
+        do {
+            otp = 100000 + random.nextInt(900000);
+        } while (otpRepository.existsByIdentificationAndExpiredDateAfter(String.valueOf(otp), now));
         Calendar calendar = Calendar.getInstance();
         calendar.setTime(now);
         calendar.add(Calendar.MINUTE, 5); // Set the expiration time to 5 minutes
@@ -44,22 +54,9 @@ UserRepository userRepository;
 
     @Override
     public Boolean VerifOTP(String identification) {
-        // Retrieve the OTP object from the repository based on the identification
-        OTP otp = otpRepository.findByIdentification(identification);
-
-        // Check if the OTP object is null (i.e., not found)
-        if (otp == null) {
-            return false; // OTP does not exist, so it's invalid
-        }
-
-        // Get the expiration date of the OTP
-        Date expiredDate = otp.getExpiredDate();
-
-        // Get the current date and time
-        Date now = new Date();
-
-        // Check if the current date and time is before or equal to the expiration date
-        return !now.after(expiredDate);
+        // Indexed lookup and one-time consumption in a single statement:
+        // an unknown, expired or already used code deletes nothing
+        return otpRepository.consume(identification, new Date()) > 0;
     }
 
     @Override
@@ -93,6 +90,19 @@ UserRepository userRepository;
 
     @Override
     public void DeleteALLOTP() {
-        otpRepository.deleteAll();
+        otpRepository.deleteAllInBatch();
+    }
+
+    // Purge des codes expirés, par lots
+    @Scheduled(fixedDelayString = "${otp.purge.interval-ms:60000}")
+    public void purgeExpiredOTP() {
+        Date now = new Date();
+        List<Long> expired;
+        do {
+            expired = otpRepository.findExpiredIds(now, PageRequest.of(0, purgeBatchSize));
+            if (!expired.isEmpty()) {
+                otpRepository.deleteByIds(expired);
+            }
+        } while (expired.size() == purgeBatchSize);
     }
 }
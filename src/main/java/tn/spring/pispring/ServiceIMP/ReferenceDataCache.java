@@ -0,0 +1,79 @@
+package tn.spring.pispring.ServiceIMP;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.stereotype.Component;
+import tn.spring.pispring.Entities.Role;
+import tn.spring.pispring.Entities.User;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceUnit;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Régions du cache de second niveau Hibernate (JCache / Caffeine, en mémoire) pour les
+ * données de référence : rôles, utilisateurs et leurs rôles, résultats des requêtes associées.
+ * Hibernate met ces régions à jour lors des écritures faites par JPA ; les évictions explicites
+ * couvrent les chemins qui modifient un utilisateur et doivent être visibles immédiatement.
+ * Taille et expiration de chaque région : application.conf (caffeine.jcache).
+ */
+@Component
+public class ReferenceDataCache {
+
+    public static final String ROLE_REGION = "role";
+    public static final String USER_REGION = "user";
+    public static final String USER_ROLES_REGION = "user-roles";
+    public static final String QUERY_REGION = "reference-queries";
+
+    private static final String[] DOMAIN_REGIONS = {ROLE_REGION, USER_REGION, USER_ROLES_REGION};
+
+    @PersistenceUnit
+    EntityManagerFactory entityManagerFactory;
+
+    public void evictUser(User user) {
+        if (user == null || user.getId() == null) {
+            return;
+        }
+        org.hibernate.Cache cache = sessionFactory().getCache();
+        cache.evictEntityData(User.class, user.getId());
+        cache.evictCollectionData(User.class.getName() + ".roles", user.getId());
+        cache.evictQueryRegion(QUERY_REGION);
+    }
+
+    public void evictRoles() {
+        org.hibernate.Cache cache = sessionFactory().getCache();
+        cache.evictEntityData(Role.class);
+        cache.evictQueryRegion(QUERY_REGION);
+    }
+
+    public Map<String, Object> getStats() {
+        Statistics statistics = sessionFactory().getStatistics();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        for (String region : DOMAIN_REGIONS) {
+            stats.put(region, regionStats(statistics.getDomainDataRegionStatistics(region)));
+        }
+        stats.put(QUERY_REGION, regionStats(statistics.getQueryRegionStatistics(QUERY_REGION)));
+        return stats;
+    }
+
+    private static Map<String, Object> regionStats(CacheRegionStatistics region) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        if (region == null) {
+            return stats; // Région pas encore créée
+        }
+        long hits = region.getHitCount();
+        long misses = region.getMissCount();
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("puts", region.getPutCount());
+        stats.put("hitRatio", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses));
+        stats.put("size", region.getElementCountInMemory());
+        return stats;
+    }
+
+    private SessionFactory sessionFactory() {
+        return entityManagerFactory.unwrap(SessionFactory.class);
+    }
+}
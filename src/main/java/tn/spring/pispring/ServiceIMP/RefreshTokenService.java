@@ -0,0 +1,161 @@
+package tn.spring.pispring.ServiceIMP;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import tn.spring.pispring.Entities.RefreshToken;
+import tn.spring.pispring.Entities.RefreshTokenFamily;
+import tn.spring.pispring.config.JWT.JwtProvider;
+import tn.spring.pispring.repo.RefreshTokenFamilyRepository;
+import tn.spring.pispring.repo.RefreshTokenRepository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Registre des refresh tokens : chaque token n'est utilisable qu'une fois et est remplacé
+ * par un nouveau token de la même famille (rotation). Présenter un token déjà consommé
+ * révoque toute la famille (réutilisation d'un token volé).
+ * L'usage unique repose sur la mise à jour conditionnelle de la table, qui fait foi entre
+ * plusieurs noeuds. La révocation d'une famille est elle aussi en base (refresh_token_family) :
+ * une rotation consomme, vérifie la famille et émet son successeur dans une seule transaction,
+ * et ne peut donc pas laisser passer un successeur valide après une déconnexion concurrente.
+ * Les familles révoquées sur ce noeud sont en plus gardées en mémoire, jusqu'à l'expiration
+ * de leur dernier token, pour refuser sans requête ; leur nombre suit les révocations et non les rotations.
+ */
+@Service
+public class RefreshTokenService {
+
+    private static final Logger LOGGER = Logger.getLogger(RefreshTokenService.class.getName());
+
+    @Autowired
+    RefreshTokenRepository refreshTokenRepository;
+    @Autowired
+    RefreshTokenFamilyRepository refreshTokenFamilyRepository;
+    @Autowired
+    JwtProvider jwtProvider;
+
+    // famille révoquée -> expiration de son dernier token possible (ms)
+    private final Map<String, Long> revokedFamilies = new ConcurrentHashMap<>();
+
+    /**
+     * Émet le premier refresh token d'une nouvelle famille (connexion).
+     */
+    @Transactional
+    public String issue(String username) {
+        String familyId = UUID.randomUUID().toString();
+        LocalDateTime expiresAt = nextExpiry();
+        refreshTokenFamilyRepository.save(new RefreshTokenFamily(familyId, username, false, expiresAt));
+        return issue(username, familyId, UUID.randomUUID().toString(), expiresAt);
+    }
+
+    private String issue(String username, String familyId, String jti, LocalDateTime expiresAt) {
+        refreshTokenRepository.save(new RefreshToken(jti, familyId, username, expiresAt));
+        return jwtProvider.generateRefreshToken(username, jti, familyId, new Date(toMillis(expiresAt)));
+    }
+
+    // Vrai si le token n'a été ni consommé ni révoqué, sur ce noeud ou sur un autre
+    public boolean isValid(String refreshToken) {
+        Claims claims = verify(refreshToken);
+        if (claims == null || isFamilyRevoked(claims.get(JwtProvider.FAMILY_CLAIM, String.class))) {
+            return false;
+        }
+        return refreshTokenRepository.isActive(claims.getId());
+    }
+
+    /**
+     * Consomme le refresh token et retourne son remplaçant, ou null si le token est invalide,
+     * expiré, inconnu ou déjà utilisé, ou si sa famille est révoquée.
+     */
+    @Transactional
+    public String rotate(String refreshToken) {
+        Claims claims = verify(refreshToken);
+        if (claims == null) {
+            return null;
+        }
+        String jti = claims.getId();
+        String familyId = claims.get(JwtProvider.FAMILY_CLAIM, String.class);
+        if (familyId == null || isFamilyRevoked(familyId)) {
+            return null;
+        }
+
+        LocalDateTime expiresAt = nextExpiry();
+        // Verrouille la famille jusqu'au commit : une révocation concurrente voit le successeur et le révoque
+        if (refreshTokenFamilyRepository.extend(familyId, expiresAt) == 0) {
+            return null;
+        }
+        String nextJti = UUID.randomUUID().toString();
+        if (refreshTokenRepository.consume(jti, nextJti) == 0) {
+            // Déjà consommé (éventuellement sur un autre noeud) ou inconnu du registre
+            revokeFamily(familyId);
+            return null;
+        }
+        return issue(claims.getSubject(), familyId, nextJti, expiresAt);
+    }
+
+    // Déconnexion : plus aucun token de la famille n'est accepté
+    @Transactional
+    public boolean revoke(String refreshToken) {
+        Claims claims = verify(refreshToken);
+        if (claims == null) {
+            return false;
+        }
+        revokeFamily(claims.get(JwtProvider.FAMILY_CLAIM, String.class));
+        return true;
+    }
+
+    private boolean isFamilyRevoked(String familyId) {
+        return familyId != null && revokedFamilies.containsKey(familyId);
+    }
+
+    private void revokeFamily(String familyId) {
+        if (familyId == null) {
+            return;
+        }
+        // Famille d'abord : une rotation en cours termine avant, et son successeur est révoqué ci-dessous
+        refreshTokenFamilyRepository.revoke(familyId);
+        int revoked = refreshTokenRepository.revokeFamily(familyId);
+        // Aucun token de la famille ne peut avoir été émis après maintenant
+        revokedFamilies.put(familyId, System.currentTimeMillis() + JwtProvider.REFRESH_TOKEN_VALIDITY_MS);
+        if (revoked > 0) {
+            LOGGER.warning("Famille de refresh tokens révoquée : " + familyId);
+        }
+    }
+
+    // Compactage : les tokens expirés n'ont plus besoin d'être suivis
+    @Scheduled(fixedRateString = "${cryptoserver.app.refreshTokenCompactionMs:3600000}")
+    public void compact() {
+        long now = System.currentTimeMillis();
+        revokedFamilies.values().removeIf(expiresAt -> expiresAt <= now);
+        LocalDateTime cutoff = LocalDateTime.now();
+        refreshTokenRepository.deleteExpired(cutoff);
+        refreshTokenFamilyRepository.deleteExpired(cutoff);
+    }
+
+    // Token sans jti (émis avant le registre) ou signature invalide : refusé
+    private Claims verify(String refreshToken) {
+        try {
+            Claims claims = jwtProvider.getClaimsFromJwtToken(refreshToken);
+            return claims.getId() != null ? claims : null;
+        } catch (JwtException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static LocalDateTime nextExpiry() {
+        return LocalDateTime.now().plus(Duration.ofMillis(JwtProvider.REFRESH_TOKEN_VALIDITY_MS));
+    }
+
+    private static long toMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -15,12 +15,15 @@ import java.util.List;
 public class RoleServiceIMP implements RoleServiceInterface {
     @Autowired
     RoleRepository roleRepository;
+    @Autowired
+    ReferenceDataCache referenceDataCache;
 
     @Override
     public void addRole(RoleName roleName) {
         Role role=new Role();
         role.setName(roleName);
         roleRepository.save(role);
+        referenceDataCache.evictRoles();
     }
 
     @Override
@@ -28,6 +31,7 @@ public class RoleServiceIMP implements RoleServiceInterface {
         Role roleToDelete = roleRepository.findByName(roleName)
                 .orElseThrow(() -> new RuntimeException("Role not found"));
         roleRepository.delete(roleToDelete);
+        referenceDataCache.evictRoles();
     }
 
     @Override
@@ -0,0 +1,198 @@
+package tn.spring.pispring.ServiceIMP;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import tn.spring.pispring.Interfaces.InsightVMClient;
+
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * Liste des sites InsightVM gardée en mémoire, avec les correspondances id <-> nom.
+ * Un instantané plus vieux que le TTL reste servi pendant qu'un seul rafraîchissement tourne
+ * en arrière-plan (stale-while-revalidate) ; seul le tout premier chargement est bloquant.
+ * S'il échoue, un instantané vide est servi et le chargement est retenté en arrière-plan après le TTL.
+ * Chaque instantané porte un ETag calculé sur son contenu et la date de son dernier changement.
+ */
+@Component
+public class SiteRegistry {
+
+    private static final Logger LOGGER = Logger.getLogger(SiteRegistry.class.getName());
+
+    public static class Snapshot {
+        private final List<JsonNode> sites;
+        private final List<Map<String, Object>> siteInformation;
+        private final Map<String, String> namesById;
+        private final Map<String, String> idsByName;
+        private final String eTag;
+        private final long lastModified;
+        private final long loadedAt;
+
+        Snapshot(List<JsonNode> sites, List<Map<String, Object>> siteInformation, Map<String, String> namesById,
+                 Map<String, String> idsByName, String eTag, long lastModified, long loadedAt) {
+            this.sites = sites;
+            this.siteInformation = siteInformation;
+            this.namesById = namesById;
+            this.idsByName = idsByName;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.loadedAt = loadedAt;
+        }
+
+        public List<JsonNode> getSites() {
+            return sites;
+        }
+
+        public List<Map<String, Object>> getSiteInformation() {
+            return siteInformation;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+    }
+
+    @Autowired
+    InsightVMClient insightVMClient;
+
+    @Value("${insightvm.api.url}")
+    private String apiUrl;
+
+    @Value("${insightvm.api.page-size:500}")
+    private int pageSize;
+
+    @Value("${insightvm.sites.ttl-seconds:60}")
+    private long ttlSeconds;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ExecutorService refresher = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("site-registry-"));
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private volatile Snapshot snapshot;
+
+    public Snapshot snapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                if (snapshot == null) {
+                    try {
+                        refresh();
+                    } catch (RuntimeException e) {
+                        LOGGER.warning("Chargement des sites impossible, liste vide servie : " + e.getMessage());
+                        snapshot = empty();
+                    }
+                }
+                return snapshot;
+            }
+        }
+        if (System.currentTimeMillis() - current.loadedAt > ttlSeconds * 1000 && refreshing.compareAndSet(false, true)) {
+            refresher.execute(() -> {
+                try {
+                    refresh();
+                } catch (RuntimeException e) {
+                    // L'instantané précédent reste servi jusqu'au prochain essai
+                    LOGGER.warning("Rafraîchissement des sites impossible : " + e.getMessage());
+                } finally {
+                    refreshing.set(false);
+                }
+            });
+        }
+        return current;
+    }
+
+    /**
+     * Relit la liste des sites depuis InsightVM et remplace l'instantané.
+     *
+     * @throws java.io.UncheckedIOException si la réponse InsightVM est illisible
+     */
+    public Snapshot refresh() {
+        List<JsonNode> sites = new ArrayList<>();
+        new InsightVMResourceIterator<>(insightVMClient, apiUrl + "/sites", pageSize, mapper,
+                InsightVMResourceIterator.treeReader(mapper)).forEachRemaining(sites::add);
+
+        List<Map<String, Object>> siteInformation = new ArrayList<>();
+        Map<String, String> namesById = new HashMap<>();
+        Map<String, String> idsByName = new HashMap<>();
+        for (JsonNode siteNode : sites) {
+            Map<String, Object> siteInfo = new LinkedHashMap<>();
+            siteInfo.put("assets", siteNode.path("assets").asInt());
+            siteInfo.put("description", siteNode.path("description").asText(null));
+            siteInfo.put("importance", siteNode.path("importance").asText(null));
+            siteInfo.put("lastScanTime", siteNode.path("lastScanTime").asText(null));
+            siteInfo.put("name", siteNode.path("name").asText(null));
+            siteInformation.add(Collections.unmodifiableMap(siteInfo));
+
+            String id = siteNode.path("id").asText();
+            String name = siteNode.path("name").asText();
+            namesById.put(id, name);
+            // Premier site rencontré pour un nom donné, comme l'ancien parcours
+            idsByName.putIfAbsent(name, id);
+        }
+
+        long now = System.currentTimeMillis();
+        String eTag = eTag(siteInformation);
+        Snapshot previous = snapshot;
+        // Contenu identique : la date de modification ne bouge pas, les clients gardent leur 304
+        long lastModified = previous != null && previous.eTag.equals(eTag) ? previous.lastModified : now;
+        Snapshot next = new Snapshot(Collections.unmodifiableList(sites), Collections.unmodifiableList(siteInformation),
+                namesById, idsByName, eTag, lastModified, now);
+        snapshot = next;
+        return next;
+    }
+
+    private Snapshot empty() {
+        long now = System.currentTimeMillis();
+        List<Map<String, Object>> none = Collections.emptyList();
+        return new Snapshot(Collections.emptyList(), none, Collections.emptyMap(), Collections.emptyMap(), eTag(none), now, now);
+    }
+
+    public String getSiteName(String siteId) {
+        return snapshot().namesById.get(siteId);
+    }
+
+    public String getSiteId(String siteName) {
+        return snapshot().idsByName.get(siteName);
+    }
+
+    public List<String> getSiteIds() {
+        List<String> siteIds = new ArrayList<>();
+        for (JsonNode siteNode : snapshot().sites) {
+            siteIds.add(siteNode.path("id").asText());
+        }
+        return siteIds;
+    }
+
+    private String eTag(List<Map<String, Object>> siteInformation) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(mapper.writeValueAsString(siteInformation).getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder("\"");
+            for (int i = 0; i < 16; i++) {
+                hex.append(String.format("%02x", hash[i]));
+            }
+            return hex.append('"').toString();
+        } catch (NoSuchAlgorithmException | JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        refresher.shutdownNow();
+    }
+}
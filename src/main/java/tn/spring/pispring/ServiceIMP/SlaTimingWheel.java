@@ -0,0 +1,160 @@
+package tn.spring.pispring.ServiceIMP;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+import java.util.logging.Logger;
+
+/**
+ * Roue temporelle hachée pour les échéances SLA : un seul thread avance la roue d'un cran par tick
+ * et ne parcourt que la case courante, quel que soit le nombre d'échéances en attente.
+ * Une échéance plus lointaine qu'un tour de roue y reste avec un compteur de tours restants.
+ * Les échéances expirées sont remises à un second thread pour ne pas retarder les ticks.
+ */
+public class SlaTimingWheel {
+
+    private static final Logger LOGGER = Logger.getLogger(SlaTimingWheel.class.getName());
+
+    private static final class Timeout {
+        final long key;
+        final long deadlineNanos;
+        long remainingRounds;
+        volatile boolean cancelled;
+
+        Timeout(long key, long deadlineNanos) {
+            this.key = key;
+            this.deadlineNanos = deadlineNanos;
+        }
+    }
+
+    private final long tickNanos;
+    private final int mask;
+    private final Queue<Timeout>[] buckets;
+    private final Queue<Timeout> pendingAdds = new ConcurrentLinkedQueue<>();
+    private final Map<Long, Timeout> scheduled = new ConcurrentHashMap<>();
+    private final LongConsumer onExpired;
+    private final ExecutorService expiryExecutor;
+    private final Thread worker;
+    private final long startNanos;
+
+    private volatile boolean running = true;
+    private long tick;
+
+    @SuppressWarnings("unchecked")
+    public SlaTimingWheel(long tickMillis, int wheelSize, LongConsumer onExpired) {
+        int size = Integer.highestOneBit(Math.max(wheelSize, 2) - 1) << 1;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.mask = size - 1;
+        this.buckets = new Queue[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new ArrayDeque<>();
+        }
+        this.onExpired = onExpired;
+        this.expiryExecutor = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("sla-expiry-"));
+        this.startNanos = System.nanoTime();
+        this.worker = new CustomizableThreadFactory("sla-wheel-").newThread(this::run);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Programme (ou reprogramme) l'échéance de {@code key} à {@code deadlineEpochMillis}.
+     * Une échéance déjà passée expire au tick suivant.
+     */
+    public void schedule(long key, long deadlineEpochMillis) {
+        long delayNanos = TimeUnit.MILLISECONDS.toNanos(deadlineEpochMillis - System.currentTimeMillis());
+        Timeout timeout = new Timeout(key, System.nanoTime() + Math.max(delayNanos, 0));
+        Timeout previous = scheduled.put(key, timeout);
+        if (previous != null) {
+            previous.cancelled = true;
+        }
+        pendingAdds.add(timeout);
+    }
+
+    public boolean cancel(long key) {
+        Timeout timeout = scheduled.remove(key);
+        if (timeout == null) {
+            return false;
+        }
+        timeout.cancelled = true;
+        return true;
+    }
+
+    public int pendingCount() {
+        return scheduled.size();
+    }
+
+    public void stop() {
+        running = false;
+        worker.interrupt();
+        expiryExecutor.shutdown();
+    }
+
+    private void run() {
+        while (running) {
+            long nextTick = startNanos + (tick + 1) * tickNanos;
+            long sleepNanos = nextTick - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    if (!running) {
+                        return;
+                    }
+                    continue;
+                }
+            }
+            transferPending();
+            expire(buckets[(int) (tick & mask)]);
+            tick++;
+        }
+    }
+
+    private void transferPending() {
+        Timeout timeout;
+        while ((timeout = pendingAdds.poll()) != null) {
+            if (timeout.cancelled) {
+                continue;
+            }
+            long targetTick = (timeout.deadlineNanos - startNanos) / tickNanos;
+            timeout.remainingRounds = Math.max(targetTick - tick, 0) / buckets.length;
+            buckets[(int) (Math.max(targetTick, tick) & mask)].add(timeout);
+        }
+    }
+
+    private void expire(Queue<Timeout> bucket) {
+        Iterator<Timeout> iterator = bucket.iterator();
+        while (iterator.hasNext()) {
+            Timeout timeout = iterator.next();
+            if (timeout.cancelled) {
+                iterator.remove();
+            } else if (timeout.remainingRounds <= 0) {
+                iterator.remove();
+                if (scheduled.remove(timeout.key, timeout)) {
+                    dispatch(timeout.key);
+                }
+            } else {
+                timeout.remainingRounds--;
+            }
+        }
+    }
+
+    private void dispatch(long key) {
+        expiryExecutor.execute(() -> {
+            try {
+                onExpired.accept(key);
+            } catch (RuntimeException e) {
+                LOGGER.severe("Erreur lors du traitement de l'échéance SLA " + key + " : " + e.getMessage());
+            }
+        });
+    }
+}
@@ -0,0 +1,135 @@
+package tn.spring.pispring.ServiceIMP;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import tn.spring.pispring.repo.HistoryRepository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * Rapports MTTR et SLA sur une fenêtre de jours : les jours matérialisés sont relus depuis
+ * ticket_analytics_daily, les autres (aujourd'hui, ou pas encore traités par le job) sont
+ * calculés à la volée par {@link TicketHistoryAnalyzer}. Un rapport mensuel ne relit donc
+ * pas l'historique des statuts.
+ */
+@Service
+public class TicketAnalyticsService {
+
+    private static final Logger LOGGER = Logger.getLogger(TicketAnalyticsService.class.getName());
+
+    @Autowired
+    TicketHistoryAnalyzer ticketHistoryAnalyzer;
+    @Autowired
+    HistoryRepository historyRepository;
+
+    @Value("${tickets.analytics.max-window-days:366}")
+    private int maxWindowDays;
+
+    /**
+     * Matérialise les jours révolus manquants, du dernier jour traité (ou du début de l'historique)
+     * jusqu'à hier ; au premier passage, au plus {@code tickets.analytics.max-window-days} jours.
+     */
+    @Scheduled(cron = "${tickets.analytics.cron:0 15 0 * * *}")
+    public void materializePendingDays() {
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        LocalDate last = ticketHistoryAnalyzer.findLastMaterializedDay();
+        LocalDate start;
+        if (last != null) {
+            start = last.plusDays(1);
+        } else {
+            LocalDateTime firstChange = historyRepository.findFirstChangeDate();
+            if (firstChange == null) {
+                return;
+            }
+            start = firstChange.toLocalDate();
+        }
+        materialize(start, yesterday);
+    }
+
+    /**
+     * Recalcule les jours révolus de [from, to], un jour par transaction, sur au plus
+     * {@code tickets.analytics.max-window-days} jours (les plus récents).
+     *
+     * @return le nombre de jours matérialisés
+     */
+    public int materialize(LocalDate from, LocalDate to) {
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        LocalDate end = to.isAfter(yesterday) ? yesterday : to;
+        LocalDate start = windowStart(from, end);
+        int days = 0;
+        for (LocalDate day = start; !day.isAfter(end); day = day.plusDays(1)) {
+            ticketHistoryAnalyzer.materializeDay(day);
+            days++;
+        }
+        if (days > 0) {
+            LOGGER.info("Analytics des tickets : " + days + " jour(s) matérialisé(s) du " + start + " au " + end);
+        }
+        return days;
+    }
+
+    /**
+     * Délais de résolution, temps par statut et taux de dépassement SLA des tickets résolus
+     * entre {@code from} et {@code to} inclus, au total et par valeur de la dimension.
+     * La fenêtre est bornée à {@code tickets.analytics.max-window-days} jours.
+     */
+    public Map<String, Object> getReport(LocalDate from, LocalDate to, TicketHistoryAnalyzer.Dimension dimension) {
+        LocalDate today = LocalDate.now();
+        LocalDate end = to.isAfter(today) ? today : to;
+        LocalDate start = windowStart(from, end);
+
+        Set<LocalDate> materializedDays = new HashSet<>();
+        Map<TicketHistoryAnalyzer.Key, TicketHistoryAnalyzer.Aggregate> aggregates =
+                ticketHistoryAnalyzer.loadDaily(start, end, dimension, materializedDays);
+
+        // Jours non matérialisés : une passe sur l'historique par plage contiguë
+        int computedDays = 0;
+        LocalDate pendingFrom = null;
+        for (LocalDate day = start; !day.isAfter(end.plusDays(1)); day = day.plusDays(1)) {
+            boolean pending = !day.isAfter(end) && !materializedDays.contains(day);
+            if (pending) {
+                computedDays++;
+                if (pendingFrom == null) {
+                    pendingFrom = day;
+                }
+            } else if (pendingFrom != null) {
+                ticketHistoryAnalyzer.analyze(pendingFrom.atStartOfDay(), day.atStartOfDay()).forEach((key, aggregate) -> {
+                    if (key.getDimension() == TicketHistoryAnalyzer.Dimension.ALL || key.getDimension() == dimension) {
+                        aggregates.computeIfAbsent(key, k -> new TicketHistoryAnalyzer.Aggregate()).merge(aggregate);
+                    }
+                });
+                pendingFrom = null;
+            }
+        }
+
+        TicketHistoryAnalyzer.Aggregate total = aggregates.getOrDefault(
+                new TicketHistoryAnalyzer.Key(TicketHistoryAnalyzer.Dimension.ALL, ""), new TicketHistoryAnalyzer.Aggregate());
+        Map<String, Object> groups = new TreeMap<>();
+        if (dimension != TicketHistoryAnalyzer.Dimension.ALL) {
+            aggregates.forEach((key, aggregate) -> {
+                if (key.getDimension() == dimension) {
+                    groups.put(key.getValue(), aggregate.toMap());
+                }
+            });
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("from", start.toString());
+        report.put("to", end.toString());
+        report.put("dimension", dimension.name());
+        report.put("materializedDays", materializedDays.size());
+        report.put("computedDays", computedDays);
+        report.put("total", total.toMap());
+        report.put("groups", groups);
+        return report;
+    }
+
+    private LocalDate windowStart(LocalDate from, LocalDate end) {
+        LocalDate oldest = end.minusDays(maxWindowDays - 1L);
+        return from.isBefore(oldest) ? oldest : from;
+    }
+}
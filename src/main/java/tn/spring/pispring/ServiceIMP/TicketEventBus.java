@@ -0,0 +1,269 @@
+package tn.spring.pispring.ServiceIMP;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import tn.spring.pispring.Entities.Ticket;
+import tn.spring.pispring.dto.TicketEvent;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Diffusion des changements de tickets aux clients SSE, filtrés par utilisateur assigné ou par site.
+ * Les derniers événements sont gardés dans un tampon circulaire : un client qui se reconnecte avec
+ * Last-Event-ID reçoit ce qu'il a manqué, ou un événement "resync" si le tampon ne remonte pas assez loin
+ * ou si l'id vient d'une instance précédente (les ids sont préfixés par l'époque de démarrage).
+ * Chaque abonné a sa propre file bornée, vidée par un pool d'envoi : l'émetteur ne fait que déposer
+ * les événements et ne bloque jamais. Un abonné dont la file déborde est fermé ; il se reconnecte
+ * avec son Last-Event-ID et reprend depuis le tampon.
+ */
+@Component
+public class TicketEventBus {
+
+    private static final int DRAIN_BATCH = 64;
+
+    private class Subscription {
+        final SseEmitter emitter;
+        final Long userId;
+        final String siteName;
+        final BlockingQueue<SseEmitter.SseEventBuilder> pending;
+        final AtomicBoolean draining = new AtomicBoolean();
+        final AtomicBoolean closed = new AtomicBoolean();
+        volatile boolean overflowed;
+
+        Subscription(SseEmitter emitter, Long userId, String siteName, int capacity) {
+            this.emitter = emitter;
+            this.userId = userId;
+            this.siteName = siteName;
+            this.pending = new ArrayBlockingQueue<>(capacity);
+        }
+
+        boolean accepts(TicketEvent event) {
+            return (userId == null || userId.equals(event.getAssigneeId()))
+                    && (siteName == null || siteName.equals(event.getSiteName()));
+        }
+
+        // Ne bloque pas : file pleine, l'abonné est trop lent et sera fermé par le pool d'envoi
+        void offer(SseEmitter.SseEventBuilder message) {
+            if (overflowed) {
+                return;
+            }
+            if (!pending.offer(message)) {
+                overflowed = true;
+                pending.clear();
+                subscriptions.remove(this);
+                dropped.incrementAndGet();
+            }
+            schedule();
+        }
+
+        void schedule() {
+            if (draining.compareAndSet(false, true)) {
+                try {
+                    senders.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    // Arrêt en cours
+                    draining.set(false);
+                }
+            }
+        }
+
+        private void drain() {
+            int sent = 0;
+            SseEmitter.SseEventBuilder message;
+            while (!overflowed && sent < DRAIN_BATCH && (message = pending.poll()) != null) {
+                if (!send(message)) {
+                    return;
+                }
+                sent++;
+            }
+            if (overflowed) {
+                if (closed.compareAndSet(false, true)) {
+                    emitter.complete();
+                }
+                return;
+            }
+            draining.set(false);
+            // Un message déposé ou un débordement pendant la fin du vidage, ou un lot à poursuivre
+            if (overflowed || !pending.isEmpty()) {
+                schedule();
+            }
+        }
+
+        private boolean send(SseEmitter.SseEventBuilder message) {
+            try {
+                emitter.send(message);
+                return true;
+            } catch (IOException | IllegalStateException e) {
+                // Client déconnecté
+                overflowed = true;
+                closed.set(true);
+                subscriptions.remove(this);
+                emitter.completeWithError(e);
+                return false;
+            }
+        }
+    }
+
+    private final long emitterTimeoutMillis;
+    private final int replaySize;
+    private final int subscriberBuffer;
+    // Époque de démarrage : un Last-Event-ID d'une autre instance déclenche un resync
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final ArrayDeque<TicketEvent> replay = new ArrayDeque<>();
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final ThreadPoolExecutor senders;
+    private final AtomicLong dropped = new AtomicLong();
+    private long lastEventId;
+
+    public TicketEventBus(@Value("${tickets.events.replay-size:1000}") int replaySize,
+                          @Value("${tickets.events.subscriber-buffer:256}") int subscriberBuffer,
+                          @Value("${tickets.events.sender-threads:4}") int senderThreads,
+                          @Value("${tickets.events.emitter-timeout-ms:1800000}") long emitterTimeoutMillis) {
+        this.replaySize = replaySize;
+        this.subscriberBuffer = subscriberBuffer;
+        this.emitterTimeoutMillis = emitterTimeoutMillis;
+        // Au plus une tâche en attente par abonné : la file du pool est bornée par le nombre d'abonnés
+        this.senders = new ThreadPoolExecutor(senderThreads, senderThreads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), new CustomizableThreadFactory("ticket-events-"));
+    }
+
+    // Dans une transaction, l'événement n'est diffusé qu'après son commit (et jamais en cas de rollback)
+    public void publish(TicketEvent.Type type, Ticket ticket) {
+        TicketEvent event = new TicketEvent(0, type, ticket.getId(), ticket.getAssetId(), ticket.getSiteName(),
+                ticket.getSeverity(), ticket.getStatus(), ticket.isArchived(),
+                ticket.getUser() != null ? ticket.getUser().getId() : null, LocalDateTime.now());
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    emit(event);
+                }
+            });
+        } else {
+            emit(event);
+        }
+    }
+
+    // Numérotation, tampon et dépôt dans les files sous le même verrou que l'abonnement : ni trou ni doublon
+    private void emit(TicketEvent event) {
+        synchronized (replay) {
+            event.setId(++lastEventId);
+            replay.addLast(event);
+            if (replay.size() > replaySize) {
+                replay.removeFirst();
+            }
+            for (Subscription subscription : subscriptions) {
+                if (subscription.accepts(event)) {
+                    subscription.offer(message(event));
+                }
+            }
+        }
+    }
+
+    public void publishAll(TicketEvent.Type type, Collection<Ticket> tickets) {
+        for (Ticket ticket : tickets) {
+            publish(type, ticket);
+        }
+    }
+
+    /**
+     * @param lastEventId dernier événement reçu par le client, null pour ne recevoir que les suivants
+     */
+    public SseEmitter subscribe(Long userId, String siteName, String lastEventId) {
+        SseEmitter emitter = new SseEmitter(emitterTimeoutMillis);
+        Subscription subscription;
+        synchronized (replay) {
+            List<TicketEvent> missed = new ArrayList<>();
+            boolean gap = false;
+            if (lastEventId != null) {
+                long since = parseSequence(lastEventId);
+                TicketEvent oldest = replay.peekFirst();
+                // Id d'avant un redémarrage, illisible, ou sorti du tampon
+                gap = since < 0 || since > this.lastEventId || oldest != null && oldest.getId() > since + 1;
+                for (TicketEvent event : replay) {
+                    if (!gap && event.getId() > since) {
+                        missed.add(event);
+                    }
+                }
+            }
+            subscription = new Subscription(emitter, userId, siteName, subscriberBuffer + missed.size() + 1);
+            if (gap) {
+                // Le client doit recharger sa vue complète puis reprendre à partir de cet id
+                subscription.offer(SseEmitter.event().id(eventId(this.lastEventId)).name("resync").data(eventId(this.lastEventId)));
+            }
+            for (TicketEvent event : missed) {
+                if (subscription.accepts(event)) {
+                    subscription.offer(message(event));
+                }
+            }
+            subscriptions.add(subscription);
+        }
+        emitter.onCompletion(() -> subscriptions.remove(subscription));
+        emitter.onTimeout(() -> subscriptions.remove(subscription));
+        emitter.onError(e -> subscriptions.remove(subscription));
+        return emitter;
+    }
+
+    // Séquence de l'id "époque-séquence", -1 s'il vient d'une autre instance ou n'est pas lisible
+    private long parseSequence(String lastEventId) {
+        int separator = lastEventId.lastIndexOf('-');
+        if (separator < 0 || !epoch.equals(lastEventId.substring(0, separator))) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(lastEventId.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private String eventId(long sequence) {
+        return epoch + "-" + sequence;
+    }
+
+    private SseEmitter.SseEventBuilder message(TicketEvent event) {
+        return SseEmitter.event()
+                .id(eventId(event.getId()))
+                .name("ticket")
+                .data(event);
+    }
+
+    // Commentaire périodique : garde la connexion ouverte derrière les proxys et détecte les clients partis
+    @Scheduled(fixedRateString = "${tickets.events.heartbeat-ms:15000}")
+    public void heartbeat() {
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(SseEmitter.event().comment("ping"));
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (replay) {
+            stats.put("lastEventId", eventId(lastEventId));
+            stats.put("buffered", replay.size());
+        }
+        stats.put("subscribers", subscriptions.size());
+        stats.put("droppedSubscribers", dropped.get());
+        stats.put("activeSenders", senders.getActiveCount());
+        return stats;
+    }
+
+    @PreDestroy
+    public void stop() {
+        senders.shutdownNow();
+        for (Subscription subscription : subscriptions) {
+            subscription.emitter.complete();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package tn.spring.pispring.ServiceIMP;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import tn.spring.pispring.dto.TicketHistoryRow;
+import tn.spring.pispring.dto.TicketSummary;
+import tn.spring.pispring.repo.HistoryRepository;
+import tn.spring.pispring.repo.TicketRepository;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Stream;
+
+/**
+ * Export des tickets et de leur historique pour le reporting, écrit ligne par ligne
+ * sur le flux de la réponse : les projections sont lues via un curseur et ne passent
+ * ni par une liste ni par le contexte de persistance, la mémoire reste constante.
+ */
+@Service
+public class TicketExportService {
+
+    public enum Format {
+        NDJSON,
+        CSV
+    }
+
+    @Autowired
+    TicketRepository ticketRepository;
+    @Autowired
+    HistoryRepository historyRepository;
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Transactional(readOnly = true)
+    public void exportTickets(OutputStream out, Format format) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        try (Stream<TicketSummary> rows = ticketRepository.streamSummaries()) {
+            if (format == Format.CSV) {
+                writer.write("id,assetId,severity,status,siteName,archived,slaDeadline,assigneeId,assigneeUsername\n");
+                rows.forEach(t -> csvLine(writer, t.getId(), t.getAssetId(), t.getSeverity(), t.getStatus(),
+                        t.getSiteName(), t.isArchived(), t.getSlaDeadline(), t.getAssigneeId(), t.getAssigneeUsername()));
+            } else {
+                ObjectWriter json = objectMapper.writerFor(TicketSummary.class);
+                rows.forEach(t -> jsonLine(writer, json, t));
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+    }
+
+    @Transactional(readOnly = true)
+    public void exportHistory(OutputStream out, Format format) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        try (Stream<TicketHistoryRow> rows = historyRepository.streamRows()) {
+            if (format == Format.CSV) {
+                writer.write("id,ticketId,assetId,siteName,status,changeDate\n");
+                rows.forEach(h -> csvLine(writer, h.getId(), h.getTicketId(), h.getAssetId(), h.getSiteName(),
+                        h.getStatus(), h.getChangeDate()));
+            } else {
+                ObjectWriter json = objectMapper.writerFor(TicketHistoryRow.class);
+                rows.forEach(h -> jsonLine(writer, json, h));
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+    }
+
+    private static void jsonLine(Writer writer, ObjectWriter json, Object row) {
+        try {
+            writer.write(json.writeValueAsString(row));
+            writer.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void csvLine(Writer writer, Object... values) {
+        try {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writer.write(csvField(values[i]));
+            }
+            writer.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String csvField(Object value) {
+        if (value == null) {
+            return "";
+        }
+        String text = value.toString();
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            return text;
+        }
+        return '"' + text.replace("\"", "\"\"") + '"';
+    }
+}
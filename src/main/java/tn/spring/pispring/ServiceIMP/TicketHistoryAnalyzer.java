@@ -0,0 +1,392 @@
+package tn.spring.pispring.ServiceIMP;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import tn.spring.pispring.Entities.Ticket;
+import tn.spring.pispring.dto.TicketTransition;
+import tn.spring.pispring.repo.HistoryRepository;
+
+import java.sql.Date;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Analyse de l'historique des statuts en une seule passe, triée par ticket puis par date : pour
+ * chaque ticket résolu sur la période (premier passage en RESOLVED ou CLOSED), délai de résolution,
+ * temps passé en OPEN et IN_PROGRESS avant la résolution, et respect du SLA ; le tout agrégé par
+ * sévérité, site et assigné. Les jours révolus sont matérialisés dans ticket_analytics_daily
+ * (JDBC direct, comme la rollup de {@link TicketStatsService}).
+ * <p>
+ * Le SLA est évalué contre l'échéance courante du ticket, l'historique n'en gardant pas de copie :
+ * une échéance reprogrammée après la résolution (EmailService.startSla, setSLADeadline) change le résultat
+ * des jours calculés à la volée, alors qu'un jour déjà matérialisé garde la valeur de son calcul.
+ */
+@Service
+public class TicketHistoryAnalyzer {
+
+    public enum Dimension {
+        ALL,
+        SEVERITY,
+        SITE,
+        USER
+    }
+
+    static final Set<Ticket.TicketStatus> RESOLVED_STATUSES = EnumSet.of(Ticket.TicketStatus.RESOLVED, Ticket.TicketStatus.CLOSED);
+
+    private static final String NONE = "none";
+    private static final String COLUMNS = "resolve_count, resolve_seconds_sum, resolve_histogram, " +
+            "open_count, open_seconds_sum, open_histogram, in_progress_count, in_progress_seconds_sum, in_progress_histogram, " +
+            "sla_evaluated, sla_breached";
+    private static final String INSERT = "INSERT INTO ticket_analytics_daily (stat_day, dimension, dimension_value, " + COLUMNS +
+            ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    @Getter
+    @EqualsAndHashCode
+    @ToString
+    @AllArgsConstructor
+    public static class Key {
+        private final Dimension dimension;
+        private final String value;
+    }
+
+    /**
+     * Durées en secondes : somme exacte pour la moyenne, histogramme logarithmique (buckets de 10 %)
+     * pour les percentiles. Deux distributions se fusionnent, ce qui permet d'agréger des jours.
+     */
+    public static class Distribution {
+        private static final double GROWTH = 1.1;
+        private static final int BUCKETS = 256;
+
+        private long count;
+        private long sum;
+        private final long[] buckets = new long[BUCKETS];
+
+        public void add(long seconds) {
+            long value = Math.max(0, seconds);
+            count++;
+            sum += value;
+            buckets[bucketOf(value)]++;
+        }
+
+        public void merge(Distribution other) {
+            count += other.count;
+            sum += other.sum;
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] += other.buckets[i];
+            }
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSum() {
+            return sum;
+        }
+
+        public double mean() {
+            return count == 0 ? 0.0 : (double) sum / count;
+        }
+
+        // Valeur représentative du bucket qui contient le rang ceil(p * count) ; erreur relative < 5 %
+        public long percentile(double p) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(p * count));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return valueOf(i);
+                }
+            }
+            return valueOf(BUCKETS - 1);
+        }
+
+        // Format creux "bucket:count,..." stocké en base
+        public String encode() {
+            StringBuilder encoded = new StringBuilder();
+            for (int i = 0; i < BUCKETS; i++) {
+                if (buckets[i] != 0) {
+                    if (encoded.length() > 0) {
+                        encoded.append(',');
+                    }
+                    encoded.append(i).append(':').append(buckets[i]);
+                }
+            }
+            return encoded.toString();
+        }
+
+        public static Distribution decode(long count, long sum, String encoded) {
+            Distribution distribution = new Distribution();
+            distribution.count = count;
+            distribution.sum = sum;
+            if (encoded != null && !encoded.isEmpty()) {
+                for (String bucket : encoded.split(",")) {
+                    int separator = bucket.indexOf(':');
+                    distribution.buckets[Integer.parseInt(bucket.substring(0, separator))] += Long.parseLong(bucket.substring(separator + 1));
+                }
+            }
+            return distribution;
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("tickets", count);
+            map.put("meanSeconds", mean());
+            map.put("p50Seconds", percentile(0.50));
+            map.put("p90Seconds", percentile(0.90));
+            map.put("p95Seconds", percentile(0.95));
+            map.put("p99Seconds", percentile(0.99));
+            return map;
+        }
+
+        // Bucket 0 : durée nulle ; bucket i : [GROWTH^(i-1), GROWTH^i[
+        private static int bucketOf(long seconds) {
+            if (seconds < 1) {
+                return 0;
+            }
+            return (int) Math.min(BUCKETS - 1, 1 + Math.floor(Math.log(seconds) / Math.log(GROWTH)));
+        }
+
+        private static long valueOf(int bucket) {
+            return bucket == 0 ? 0 : Math.round(Math.pow(GROWTH, bucket - 0.5));
+        }
+    }
+
+    // Indicateurs d'un groupe (jour x dimension, ou fenêtre entière après fusion)
+    @Getter
+    public static class Aggregate {
+        private final Distribution resolve;
+        private final Distribution open;
+        private final Distribution inProgress;
+        private long slaEvaluated;
+        private long slaBreached;
+
+        public Aggregate() {
+            this(new Distribution(), new Distribution(), new Distribution(), 0, 0);
+        }
+
+        private Aggregate(Distribution resolve, Distribution open, Distribution inProgress, long slaEvaluated, long slaBreached) {
+            this.resolve = resolve;
+            this.open = open;
+            this.inProgress = inProgress;
+            this.slaEvaluated = slaEvaluated;
+            this.slaBreached = slaBreached;
+        }
+
+        void add(TicketTimeline timeline) {
+            resolve.add(timeline.resolveSeconds());
+            if (timeline.wasOpen) {
+                open.add(timeline.openSeconds);
+            }
+            if (timeline.wasInProgress) {
+                inProgress.add(timeline.inProgressSeconds);
+            }
+            // Échéance courante du ticket, pas celle en vigueur à la résolution (voir la doc de la classe)
+            LocalDateTime deadline = timeline.first.getSlaDeadline();
+            if (deadline != null) {
+                slaEvaluated++;
+                if (timeline.resolvedAt.isAfter(deadline)) {
+                    slaBreached++;
+                }
+            }
+        }
+
+        public void merge(Aggregate other) {
+            resolve.merge(other.resolve);
+            open.merge(other.open);
+            inProgress.merge(other.inProgress);
+            slaEvaluated += other.slaEvaluated;
+            slaBreached += other.slaBreached;
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> timeInStatus = new LinkedHashMap<>();
+            timeInStatus.put(Ticket.TicketStatus.OPEN.name(), open.toMap());
+            timeInStatus.put(Ticket.TicketStatus.IN_PROGRESS.name(), inProgress.toMap());
+
+            Map<String, Object> sla = new LinkedHashMap<>();
+            sla.put("evaluated", slaEvaluated);
+            sla.put("breached", slaBreached);
+            sla.put("breachRate", slaEvaluated == 0 ? 0.0 : (double) slaBreached / slaEvaluated);
+
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("resolved", resolve.getCount());
+            map.put("timeToResolve", resolve.toMap());
+            map.put("timeInStatus", timeInStatus);
+            map.put("sla", sla);
+            return map;
+        }
+    }
+
+    // Historique d'un ticket parcouru dans l'ordre ; ce qui suit la résolution (réouverture...) est ignoré
+    static class TicketTimeline {
+        private final TicketTransition first;
+        private Ticket.TicketStatus previousStatus;
+        private LocalDateTime previousAt;
+        private LocalDateTime resolvedAt;
+        private long openSeconds;
+        private long inProgressSeconds;
+        private boolean wasOpen;
+        private boolean wasInProgress;
+
+        TicketTimeline(TicketTransition first) {
+            this.first = first;
+            this.previousStatus = first.getStatus();
+            this.previousAt = first.getChangeDate();
+            if (RESOLVED_STATUSES.contains(first.getStatus())) {
+                resolvedAt = first.getChangeDate();
+            }
+        }
+
+        boolean sameTicket(TicketTransition transition) {
+            return first.getTicketId().equals(transition.getTicketId());
+        }
+
+        void next(TicketTransition transition) {
+            if (resolvedAt != null) {
+                return;
+            }
+            long seconds = secondsBetween(previousAt, transition.getChangeDate());
+            if (previousStatus == Ticket.TicketStatus.OPEN) {
+                openSeconds += seconds;
+                wasOpen = true;
+            } else if (previousStatus == Ticket.TicketStatus.IN_PROGRESS) {
+                inProgressSeconds += seconds;
+                wasInProgress = true;
+            }
+            if (RESOLVED_STATUSES.contains(transition.getStatus())) {
+                resolvedAt = transition.getChangeDate();
+            }
+            previousStatus = transition.getStatus();
+            previousAt = transition.getChangeDate();
+        }
+
+        // Première résolution dans [from, to[ ; un ticket résolu plus tôt puis rouvert n'est pas recompté
+        boolean resolvedWithin(LocalDateTime from, LocalDateTime to) {
+            return resolvedAt != null && !resolvedAt.isBefore(from) && resolvedAt.isBefore(to);
+        }
+
+        long resolveSeconds() {
+            return secondsBetween(first.getChangeDate(), resolvedAt);
+        }
+
+        // Dimensions courantes du ticket : sévérité, site et assigné au moment de l'analyse
+        List<Key> keys() {
+            return Arrays.asList(
+                    new Key(Dimension.ALL, ""),
+                    new Key(Dimension.SEVERITY, label(first.getSeverity())),
+                    new Key(Dimension.SITE, label(first.getSiteName())),
+                    new Key(Dimension.USER, first.getAssigneeId() != null ? String.valueOf(first.getAssigneeId()) : NONE));
+        }
+
+        private static long secondsBetween(LocalDateTime start, LocalDateTime end) {
+            if (start == null || end == null) {
+                return 0;
+            }
+            return Math.max(0, Duration.between(start, end).getSeconds());
+        }
+    }
+
+    @Autowired
+    HistoryRepository historyRepository;
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    /**
+     * Indicateurs des tickets résolus dans [from, to[. Ne lit que l'historique de ces tickets,
+     * en flux, sans charger les entités.
+     */
+    @Transactional(readOnly = true)
+    public Map<Key, Aggregate> analyze(LocalDateTime from, LocalDateTime to) {
+        Map<Key, Aggregate> aggregates = new HashMap<>();
+        TicketTimeline timeline = null;
+        try (Stream<TicketTransition> transitions = historyRepository.streamTransitionsOfTicketsReaching(RESOLVED_STATUSES, from, to)) {
+            Iterator<TicketTransition> iterator = transitions.iterator();
+            while (iterator.hasNext()) {
+                TicketTransition transition = iterator.next();
+                if (timeline != null && timeline.sameTicket(transition)) {
+                    timeline.next(transition);
+                } else {
+                    record(aggregates, timeline, from, to);
+                    timeline = new TicketTimeline(transition);
+                }
+            }
+        }
+        record(aggregates, timeline, from, to);
+        return aggregates;
+    }
+
+    private static void record(Map<Key, Aggregate> aggregates, TicketTimeline timeline, LocalDateTime from, LocalDateTime to) {
+        if (timeline == null || !timeline.resolvedWithin(from, to)) {
+            return;
+        }
+        for (Key key : timeline.keys()) {
+            aggregates.computeIfAbsent(key, k -> new Aggregate()).add(timeline);
+        }
+    }
+
+    /**
+     * Recalcule et remplace les lignes d'un jour. La ligne ALL est toujours écrite, même vide :
+     * elle marque le jour comme matérialisé.
+     */
+    @Transactional
+    public int materializeDay(LocalDate day) {
+        Map<Key, Aggregate> aggregates = analyze(day.atStartOfDay(), day.plusDays(1).atStartOfDay());
+        aggregates.computeIfAbsent(new Key(Dimension.ALL, ""), key -> new Aggregate());
+
+        List<Object[]> rows = new ArrayList<>();
+        aggregates.forEach((key, aggregate) -> rows.add(new Object[]{Date.valueOf(day), key.getDimension().name(), key.getValue(),
+                aggregate.resolve.getCount(), aggregate.resolve.getSum(), aggregate.resolve.encode(),
+                aggregate.open.getCount(), aggregate.open.getSum(), aggregate.open.encode(),
+                aggregate.inProgress.getCount(), aggregate.inProgress.getSum(), aggregate.inProgress.encode(),
+                aggregate.slaEvaluated, aggregate.slaBreached}));
+        jdbcTemplate.update("DELETE FROM ticket_analytics_daily WHERE stat_day = ?", Date.valueOf(day));
+        jdbcTemplate.batchUpdate(INSERT, rows);
+        return rows.size();
+    }
+
+    /**
+     * Fusionne les jours matérialisés de [from, to] pour la dimension demandée et pour ALL.
+     * Les jours trouvés sont ajoutés à {@code materializedDays}.
+     */
+    public Map<Key, Aggregate> loadDaily(LocalDate from, LocalDate to, Dimension dimension, Set<LocalDate> materializedDays) {
+        Map<Key, Aggregate> aggregates = new HashMap<>();
+        jdbcTemplate.query("SELECT stat_day, dimension, dimension_value, " + COLUMNS + " FROM ticket_analytics_daily " +
+                        "WHERE stat_day >= ? AND stat_day <= ? AND dimension IN (?, ?)",
+                rs -> {
+                    Key key = new Key(Dimension.valueOf(rs.getString(2)), rs.getString(3));
+                    if (key.getDimension() == Dimension.ALL) {
+                        materializedDays.add(rs.getDate(1).toLocalDate());
+                    }
+                    Aggregate day = new Aggregate(
+                            Distribution.decode(rs.getLong(4), rs.getLong(5), rs.getString(6)),
+                            Distribution.decode(rs.getLong(7), rs.getLong(8), rs.getString(9)),
+                            Distribution.decode(rs.getLong(10), rs.getLong(11), rs.getString(12)),
+                            rs.getLong(13), rs.getLong(14));
+                    aggregates.computeIfAbsent(key, k -> new Aggregate()).merge(day);
+                },
+                Date.valueOf(from), Date.valueOf(to), Dimension.ALL.name(), dimension.name());
+        return aggregates;
+    }
+
+    public LocalDate findLastMaterializedDay() {
+        Date last = jdbcTemplate.queryForObject("SELECT MAX(stat_day) FROM ticket_analytics_daily", Date.class);
+        return last != null ? last.toLocalDate() : null;
+    }
+
+    private static String label(String value) {
+        return value == null || value.isEmpty() ? NONE : value;
+    }
+}
@@ -0,0 +1,104 @@
+package tn.spring.pispring.ServiceIMP;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import tn.spring.pispring.Entities.Ticket;
+import tn.spring.pispring.dto.TicketDraft;
+import tn.spring.pispring.repo.TicketRepository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.*;
+
+/**
+ * Écriture des tickets issus de l'ingestion InsightVM par lots : un seul IN pour retrouver
+ * les tickets existants du lot, comparaison en mémoire, puis inserts et updates envoyés
+ * en batch JDBC au flush.
+ */
+@Service
+public class TicketIngestionWriter {
+
+    // Applique un brouillon sur un ticket existant ; retourne true si le ticket a changé
+    @FunctionalInterface
+    public interface TicketMerger {
+        boolean merge(Ticket existing, TicketDraft draft);
+    }
+
+    private static final int MAX_IN_PARAMETERS = 1000;
+
+    @Autowired
+    TicketRepository ticketRepository;
+    @Autowired
+    TicketStatsService ticketStatsService;
+    @PersistenceContext
+    EntityManager entityManager;
+
+    @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}")
+    private int batchSize;
+
+    @Value("${ticket.ingestion.chunk-size:500}")
+    private int chunkSize;
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Insère ou met à jour un lot de tickets dans une seule transaction.
+     * À appeler avec des lots d'au plus {@link #getChunkSize()} brouillons.
+     *
+     * @return les tickets créés
+     */
+    @Transactional
+    public List<Ticket> upsert(List<TicketDraft> drafts, TicketMerger merger) {
+        Map<String, Ticket> ticketsByAssetId = findExisting(drafts);
+
+        List<Ticket> created = new ArrayList<>();
+        // Deltas de la rollup des statistiques, appliqués en une fois dans cette transaction
+        Map<TicketStatsService.Key, Long> statsDeltas = new HashMap<>();
+        int pendingWrites = 0;
+        for (TicketDraft draft : drafts) {
+            Ticket existing = ticketsByAssetId.get(draft.getLookupAssetId());
+            if (existing != null) {
+                TicketStatsService.Key before = TicketStatsService.Key.of(existing);
+                // Mis à jour par dirty checking au prochain flush
+                if (merger.merge(existing, draft)) {
+                    TicketStatsService.addChange(statsDeltas, before, TicketStatsService.Key.of(existing));
+                    pendingWrites++;
+                }
+            } else {
+                Ticket ticket = new Ticket(draft.getAssetId(), draft.getSeverity(), draft.getDescription(), draft.getRemediation());
+                ticket.setSiteName(draft.getSiteName());
+                ticket.addStatusChange(ticket.getStatus());
+                entityManager.persist(ticket);
+                ticketsByAssetId.putIfAbsent(ticket.getAssetId(), ticket);
+                created.add(ticket);
+                statsDeltas.merge(TicketStatsService.Key.of(ticket), 1L, Long::sum);
+                pendingWrites++;
+            }
+
+            if (pendingWrites >= batchSize) {
+                entityManager.flush();
+                pendingWrites = 0;
+            }
+        }
+        ticketStatsService.apply(statsDeltas);
+        return created;
+    }
+
+    private Map<String, Ticket> findExisting(List<TicketDraft> drafts) {
+        Set<String> distinct = new LinkedHashSet<>();
+        drafts.forEach(draft -> distinct.add(draft.getLookupAssetId()));
+        List<String> assetIds = new ArrayList<>(distinct);
+        Map<String, Ticket> ticketsByAssetId = new HashMap<>();
+        for (int from = 0; from < assetIds.size(); from += MAX_IN_PARAMETERS) {
+            List<String> chunk = assetIds.subList(from, Math.min(from + MAX_IN_PARAMETERS, assetIds.size()));
+            for (Ticket ticket : ticketRepository.findTicketsByAssetIdIn(chunk)) {
+                ticketsByAssetId.putIfAbsent(ticket.getAssetId(), ticket);
+            }
+        }
+        return ticketsByAssetId;
+    }
+}
@@ -6,7 +6,15 @@ import tn.spring.pispring.Entities.TicketStatusHistory;
 import tn.spring.pispring.Interfaces.TicketInterface;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import tn.spring.pispring.dto.TicketEvent;
+import tn.spring.pispring.dto.TicketPage;
+import tn.spring.pispring.dto.TicketSummary;
 import tn.spring.pispring.repo.HistoryRepository;
 import tn.spring.pispring.repo.TicketRepository;
 
@@ -20,9 +28,27 @@ public class TicketService implements TicketInterface {
     TicketRepository ticketRepository;
     @Autowired
     private HistoryRepository historyRepository;
+    @Autowired
+    private EmailService emailService;
+    @Autowired
+    private TicketEventBus ticketEventBus;
+    @Autowired
+    private TicketStatsService ticketStatsService;
+
+    @Value("${tickets.page.max-size:500}")
+    private int maxPageSize;
     @Override
+    @Transactional
     public Ticket addTicket(Ticket ticket) {
-        return ticketRepository.save(ticket);
+        Optional<Ticket> existing = ticket.getId() != null ? ticketRepository.findById(ticket.getId()) : Optional.empty();
+        TicketStatsService.Key before = existing.map(TicketStatsService.Key::of).orElse(null);
+        Ticket saved = ticketRepository.save(ticket);
+        if (before != null) {
+            ticketStatsService.recordChanged(before, saved);
+        } else {
+            ticketStatsService.recordCreated(saved);
+        }
+        return saved;
     }
 
     @Override
@@ -43,35 +69,55 @@ public class TicketService implements TicketInterface {
     }
 
     @Override
+    @Transactional
     public void deleteTicket(long id) {
+        Ticket ticket = ticketRepository.findById(id).orElse(null);
         ticketRepository.deleteById(id);
+        ticketStatsService.recordDeleted(ticket);
 
     }
 
     @Override
     public List<Ticket> findAllTickets() {
-        return ticketRepository.findAll();
+        return ticketRepository.findAllForListing();
     }
 
     @Override
     public Ticket findTicketById(long id) {
         return ticketRepository.findById(id).get();
     }
+    // Ticket, historique et compteurs de la rollup sont écrits dans la même transaction ;
+    // une erreur l'annule entièrement et remonte à l'appelant
+    @Transactional
     public Optional<Ticket> updateTicketStatusByticketId(Long ticketid, Ticket.TicketStatus status) {
         Ticket ticket = ticketRepository.findTicketById(ticketid);
-        if (ticket != null) {
-            try {
-                ticket.addStatusChange(status); // Ajouter le changement de statut à l'historique
-                ticket.setStatus(status);
-                ticketRepository.save(ticket);  // Enregistre les modifications dans la base de données
-            } catch (Exception e) {
-                // Loggez l'erreur pour en savoir plus
-                System.err.println("Erreur lors de la mise à jour du statut du ticket: " + e.getMessage());
-                e.printStackTrace();
-            }
-            return Optional.of(ticket);
+        if (ticket == null) {
+            return Optional.empty();
+        }
+        TicketStatsService.Key before = TicketStatsService.Key.of(ticket);
+        ticket.addStatusChange(status); // Ajouter le changement de statut à l'historique
+        ticket.setStatus(status);
+        ticketRepository.save(ticket);  // Enregistre les modifications dans la base de données
+        ticketStatsService.recordChanged(before, ticket);
+        if (status == Ticket.TicketStatus.CLOSED) {
+            cancelSlaAfterCommit(ticketid); // Plus d'échéance SLA pour un ticket fermé
+        }
+        ticketEventBus.publish(TicketEvent.Type.STATUS_CHANGED, ticket);
+        return Optional.of(ticket);
+    }
+
+    // La roue SLA est en mémoire : n'y retirer l'échéance qu'une fois la fermeture commitée
+    private void cancelSlaAfterCommit(Long ticketId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    emailService.cancelSla(ticketId);
+                }
+            });
+        } else {
+            emailService.cancelSla(ticketId);
         }
-        return Optional.empty();
     }
 
     public List<TicketStatusHistory> getTicketStatusHistoryByticketId(Long ticketId) {
@@ -82,7 +128,17 @@ public class TicketService implements TicketInterface {
         return ticket.getStatusHistory();
     }
     public List<Ticket> findClosedTickets() {
-        return ticketRepository.findByStatus(Ticket.TicketStatus.CLOSED);
+        return ticketRepository.findDistinctByStatus(Ticket.TicketStatus.CLOSED);
+    }
+
+    // Pagination par curseur sur l'id : coût constant quelle que soit la profondeur de la page
+    public TicketPage findTicketPage(Long afterId, int size, Ticket.TicketStatus status, String severity,
+                                     String siteName, Long assigneeId, Boolean archived) {
+        int pageSize = Math.max(1, Math.min(size, maxPageSize));
+        List<TicketSummary> items = ticketRepository.findSummaries(afterId != null ? afterId : 0L,
+                status, severity, siteName, assigneeId, archived, PageRequest.of(0, pageSize));
+        Long nextCursor = items.size() == pageSize ? items.get(items.size() - 1).getId() : null;
+        return new TicketPage(items, nextCursor);
     }
 
 
@@ -0,0 +1,182 @@
+package tn.spring.pispring.ServiceIMP;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import tn.spring.pispring.Entities.Ticket;
+
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * Compteurs de tickets par (site, sévérité, statut, assigné) dans la table ticket_stats_rollup.
+ * Les écritures de tickets y appliquent leurs deltas dans leur propre transaction ; les statistiques
+ * se lisent alors en O(groupes). Une réconciliation périodique recalcule les compteurs depuis la
+ * table ticket et corrige les écarts (écritures faites hors de ces chemins).
+ * Accès JDBC direct : une requête native passée par Hibernate viderait le cache de second niveau.
+ */
+@Service
+public class TicketStatsService {
+
+    private static final Logger LOGGER = Logger.getLogger(TicketStatsService.class.getName());
+
+    private static final String UPSERT = "INSERT INTO ticket_stats_rollup (site_name, severity, status, assignee_id, ticket_count) " +
+            "VALUES (?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE ticket_count = ticket_count + VALUES(ticket_count)";
+    private static final String NONE = "none";
+
+    // Groupe de la rollup ; les valeurs absentes valent '' ou 0 comme en base
+    @Getter
+    @EqualsAndHashCode
+    @ToString
+    @AllArgsConstructor
+    public static class Key {
+        private final String siteName;
+        private final String severity;
+        private final String status;
+        private final long assigneeId;
+
+        public static Key of(Ticket ticket) {
+            return new Key(orEmpty(ticket.getSiteName()), orEmpty(ticket.getSeverity()),
+                    ticket.getStatus() != null ? ticket.getStatus().name() : "",
+                    ticket.getUser() != null && ticket.getUser().getId() != null ? ticket.getUser().getId() : 0L);
+        }
+
+        private static String orEmpty(String value) {
+            return value != null ? value : "";
+        }
+    }
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordCreated(Ticket ticket) {
+        apply(Collections.singletonMap(Key.of(ticket), 1L));
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordDeleted(Ticket ticket) {
+        apply(Collections.singletonMap(Key.of(ticket), -1L));
+    }
+
+    // À appeler avec la clé du ticket avant modification
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordChanged(Key before, Ticket after) {
+        Map<Key, Long> deltas = new HashMap<>();
+        addChange(deltas, before, Key.of(after));
+        apply(deltas);
+    }
+
+    public static void addChange(Map<Key, Long> deltas, Key before, Key after) {
+        if (!before.equals(after)) {
+            deltas.merge(before, -1L, Long::sum);
+            deltas.merge(after, 1L, Long::sum);
+        }
+    }
+
+    /**
+     * Applique des deltas dans la transaction courante. Les groupes sont verrouillés dans un ordre
+     * fixe pour que deux écritures concurrentes ne s'interbloquent pas.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void apply(Map<Key, Long> deltas) {
+        List<Object[]> rows = new ArrayList<>();
+        deltas.entrySet().stream()
+                .filter(delta -> delta.getValue() != 0)
+                .sorted(Comparator.comparing((Map.Entry<Key, Long> delta) -> delta.getKey().getSiteName())
+                        .thenComparing(delta -> delta.getKey().getSeverity())
+                        .thenComparing(delta -> delta.getKey().getStatus())
+                        .thenComparingLong(delta -> delta.getKey().getAssigneeId()))
+                .forEach(delta -> rows.add(new Object[]{delta.getKey().getSiteName(), delta.getKey().getSeverity(),
+                        delta.getKey().getStatus(), delta.getKey().getAssigneeId(), delta.getValue()}));
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPSERT, rows);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Long> bySeverity = new TreeMap<>();
+        Map<String, Long> byStatus = new TreeMap<>();
+        Map<String, Long> bySite = new TreeMap<>();
+        Map<String, Long> byAssignee = new TreeMap<>();
+        List<Map<String, Object>> groups = new ArrayList<>();
+        long[] total = {0};
+        jdbcTemplate.query("SELECT site_name, severity, status, assignee_id, ticket_count FROM ticket_stats_rollup " +
+                "WHERE ticket_count <> 0", rs -> {
+            String site = label(rs.getString(1));
+            String severity = label(rs.getString(2));
+            String status = label(rs.getString(3));
+            long assigneeId = rs.getLong(4);
+            long count = rs.getLong(5);
+            String assignee = assigneeId != 0 ? String.valueOf(assigneeId) : NONE;
+
+            total[0] += count;
+            bySeverity.merge(severity, count, Long::sum);
+            byStatus.merge(status, count, Long::sum);
+            bySite.merge(site, count, Long::sum);
+            byAssignee.merge(assignee, count, Long::sum);
+
+            Map<String, Object> group = new LinkedHashMap<>();
+            group.put("site", site);
+            group.put("severity", severity);
+            group.put("status", status);
+            group.put("assignee", assignee);
+            group.put("count", count);
+            groups.add(group);
+        });
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("total", total[0]);
+        stats.put("bySeverity", bySeverity);
+        stats.put("byStatus", byStatus);
+        stats.put("bySite", bySite);
+        stats.put("byAssignee", byAssignee);
+        stats.put("groups", groups);
+        return stats;
+    }
+
+    /**
+     * Recalcule les compteurs depuis la table ticket. Les lignes de la rollup sont verrouillées
+     * d'abord : une écriture de ticket concurrente attend la fin de la réconciliation pour
+     * appliquer son delta, qui n'est donc ni perdu ni compté deux fois.
+     */
+    @Scheduled(initialDelayString = "${tickets.stats.reconcile-ms:3600000}", fixedDelayString = "${tickets.stats.reconcile-ms:3600000}")
+    @Transactional
+    public void reconcile() {
+        Map<Key, Long> stored = new HashMap<>();
+        jdbcTemplate.query("SELECT site_name, severity, status, assignee_id, ticket_count FROM ticket_stats_rollup FOR UPDATE",
+                rs -> {
+                    stored.put(new Key(rs.getString(1), rs.getString(2), rs.getString(3), rs.getLong(4)), rs.getLong(5));
+                });
+
+        Map<Key, Long> deltas = new HashMap<>();
+        jdbcTemplate.query("SELECT COALESCE(site_name, ''), COALESCE(severity, ''), COALESCE(status, ''), COALESCE(user_id, 0), COUNT(*) " +
+                "FROM ticket GROUP BY COALESCE(site_name, ''), COALESCE(severity, ''), COALESCE(status, ''), COALESCE(user_id, 0)", rs -> {
+            Key key = new Key(rs.getString(1), rs.getString(2), rs.getString(3), rs.getLong(4));
+            long actual = rs.getLong(5);
+            Long counted = stored.remove(key);
+            deltas.put(key, actual - (counted != null ? counted : 0L));
+        });
+        // Groupes qui n'ont plus aucun ticket
+        stored.forEach((key, counted) -> deltas.put(key, -counted));
+
+        long drifted = deltas.values().stream().filter(delta -> delta != 0).count();
+        if (drifted > 0) {
+            LOGGER.warning("Rollup des tickets : " + drifted + " groupe(s) corrigé(s)");
+            apply(deltas);
+        }
+        // Les groupes vides ne servent plus à rien
+        jdbcTemplate.update("DELETE FROM ticket_stats_rollup WHERE ticket_count = 0");
+    }
+
+    private static String label(String value) {
+        return value == null || value.isEmpty() ? NONE : value;
+    }
+}
@@ -0,0 +1,75 @@
+package tn.spring.pispring.ServiceIMP;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import tn.spring.pispring.repo.UserRepository;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Version de jeton courante de chaque utilisateur, gardée en mémoire (LRU + TTL) pour que
+ * l'authentification sans état ne lise la base qu'une fois par utilisateur et par TTL.
+ * Le TTL borne le délai de prise en compte d'une révocation faite sur un autre noeud.
+ */
+@Component
+public class TokenVersionCache {
+
+    // Utilisateur supprimé : aucune version de jeton n'est valide
+    private static final long NO_USER = -1L;
+
+    private static class Entry {
+        final long version;
+        final long expiresAt;
+
+        Entry(long version, long expiresAt) {
+            this.version = version;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    @Autowired
+    UserRepository userRepository;
+
+    private final long ttlMillis;
+    private final Map<Long, Entry> entries;
+
+    public TokenVersionCache(@Value("${cryptoserver.app.tokenVersionCache.maxSize:50000}") int maxSize,
+                             @Value("${cryptoserver.app.tokenVersionCache.ttlSeconds:30}") long ttlSeconds) {
+        this.ttlMillis = ttlSeconds * 1000;
+        this.entries = new LinkedHashMap<Long, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public boolean isCurrent(Long userId, long tokenVersion) {
+        return currentVersion(userId) == tokenVersion;
+    }
+
+    public void invalidate(Long userId) {
+        synchronized (entries) {
+            entries.remove(userId);
+        }
+    }
+
+    private long currentVersion(Long userId) {
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Entry entry = entries.get(userId);
+            if (entry != null && entry.expiresAt > now) {
+                return entry.version;
+            }
+        }
+        Optional<Long> version = userRepository.findTokenVersionById(userId);
+        long current = version.orElse(NO_USER);
+        synchronized (entries) {
+            entries.put(userId, new Entry(current, now + ttlMillis));
+        }
+        return current;
+    }
+}
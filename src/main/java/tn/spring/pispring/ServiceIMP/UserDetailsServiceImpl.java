@@ -8,27 +8,41 @@ import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import tn.spring.pispring.Entities.User;
 import tn.spring.pispring.Entities.UserPrinciple;
 import tn.spring.pispring.repo.UserRepository;
 
+import java.util.List;
+
 @Service
 public class UserDetailsServiceImpl implements UserDetailsService {
 
     @Autowired
     UserRepository userRepository;
+    @Autowired
+    UserPrincipalCache principalCache;
 
+    // Pas de transaction : les rôles viennent du fetch join, et un hit du cache n'emprunte aucune connexion
     @Override
-    @Transactional
     public UserDetails loadUserByUsername(String username)
             throws UsernameNotFoundException {
 
-        User user = userRepository.findByUsername(username)
-                .orElseGet(() -> userRepository.findByEmail(username)
+        UserPrinciple cached = principalCache.get(username);
+        if (cached != null) {
+            return cached;
+        }
+
+        // Un seul aller-retour : username ou email, rôles chargés par fetch join ; le username est prioritaire
+        List<User> users = userRepository.findByUsernameOrEmailWithRoles(username);
+        User user = users.stream()
+                .filter(candidate -> username.equals(candidate.getUsername()))
+                .findFirst()
+                .orElseGet(() -> users.stream().findFirst()
                         .orElseThrow(() -> new UsernameNotFoundException("User Not Found with -> username or email : " + username)));
 
-        return UserPrinciple.build(user);
+        UserPrinciple principal = UserPrinciple.build(user);
+        principalCache.put(username, principal);
+        return principal;
     }
 }
 
@@ -0,0 +1,74 @@
+package tn.spring.pispring.ServiceIMP;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import tn.spring.pispring.Entities.User;
+import tn.spring.pispring.Entities.UserPrinciple;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Principaux récemment chargés, indexés par identifiant de connexion (username ou email).
+ * Partagé par le login et l'authentification par token ; TTL court, et invalidation explicite
+ * quand l'utilisateur change (mot de passe, blocage, suppression).
+ */
+@Component
+public class UserPrincipalCache {
+
+    private static class Entry {
+        final UserPrinciple principal;
+        final long expiresAt;
+
+        Entry(UserPrinciple principal, long expiresAt) {
+            this.principal = principal;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final long ttlMillis;
+    private final Map<String, Entry> entries;
+
+    public UserPrincipalCache(@Value("${cryptoserver.app.principalCache.maxSize:10000}") int maxSize,
+                              @Value("${cryptoserver.app.principalCache.ttlSeconds:60}") long ttlSeconds) {
+        this.ttlMillis = ttlSeconds * 1000;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public UserPrinciple get(String login) {
+        synchronized (entries) {
+            Entry entry = entries.get(login);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAt <= System.currentTimeMillis()) {
+                entries.remove(login);
+                return null;
+            }
+            return entry.principal;
+        }
+    }
+
+    public void put(String login, UserPrinciple principal) {
+        synchronized (entries) {
+            entries.put(login, new Entry(principal, System.currentTimeMillis() + ttlMillis));
+        }
+    }
+
+    // Retire toutes les entrées de l'utilisateur, qu'elles aient été chargées par username ou par email
+    public void invalidate(User user) {
+        if (user == null) {
+            return;
+        }
+        synchronized (entries) {
+            entries.remove(user.getUsername());
+            entries.remove(user.getEmail());
+            entries.values().removeIf(entry -> user.getId() != null && user.getId().equals(entry.principal.getId()));
+        }
+    }
+}
@@ -35,6 +35,12 @@ public class UserServiceIMP implements UserServiceInterface {
     PasswordEncoder passwordEncoder;
     @Autowired
     RoleRepository roleRepository;
+    @Autowired
+    TokenVersionCache tokenVersionCache;
+    @Autowired
+    UserPrincipalCache principalCache;
+    @Autowired
+    ReferenceDataCache referenceDataCache;
 
     public List<User> getAllUser() {
         return userRepository.findAll();
@@ -54,13 +60,27 @@ public class UserServiceIMP implements UserServiceInterface {
         User user = userRepository.findById(id).orElse(null);
 
         userRepository.delete(user);
+        tokenVersionCache.invalidate(id);
+        principalCache.invalidate(user);
+        referenceDataCache.evictUser(user);
         return user;
 
     }
 
     @Override
     public void bloqueUser(Long id) {
+        User user = userRepository.findById(id).orElseThrow(() -> new IllegalArgumentException("User ID not Found"));
+        user.setBlocked(true);
+        revokeTokens(user);
+        userRepository.save(user);
+        tokenVersionCache.invalidate(id);
+        principalCache.invalidate(user);
+        referenceDataCache.evictUser(user);
+    }
 
+    // Les access tokens déjà émis pour cet utilisateur deviennent invalides
+    private void revokeTokens(User user) {
+        user.setTokenVersion(user.getTokenVersion() + 1);
     }
 
 
@@ -124,6 +144,8 @@ public class UserServiceIMP implements UserServiceInterface {
 
             user1.setBlocked(true);
             this.userRepository.save(user1);
+            principalCache.invalidate(user1);
+            referenceDataCache.evictUser(user1);
            /*try {
                 mailSending.send(user1.getEmail(), "Welcome ", body);
             } catch (Exception e) {
@@ -239,7 +261,11 @@ public ResponseEntity<?> userforgetpassword(String email) {
             String storedHashedPassword = user.get().getPassword();
             if (passwordEncoder.matches(updatePasswordDto.getOldPassword(), storedHashedPassword)) {
                 user.get().setPassword(passwordEncoder.encode(updatePasswordDto.getNewPassword()));
+                revokeTokens(user.get());
                 userRepository.save(user.get());
+                tokenVersionCache.invalidate(user.get().getId());
+                principalCache.invalidate(user.get());
+                referenceDataCache.evictUser(user.get());
                 return new ResponseEntity<>(HttpStatus.OK);
 
             } else {
@@ -259,7 +285,11 @@ public ResponseEntity<?> userforgetpassword(String email) {
                 }
                 else {
                     user.get().setPassword(passwordEncoder.encode(updatePasswordDto.getNewPassword()));
+                    revokeTokens(user.get());
                     userRepository.save(user.get());
+                    tokenVersionCache.invalidate(user.get().getId());
+                    principalCache.invalidate(user.get());
+                    referenceDataCache.evictUser(user.get());
                     return new ResponseEntity<>(HttpStatus.OK);
                 }
 
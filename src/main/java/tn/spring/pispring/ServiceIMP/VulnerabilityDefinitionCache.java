@@ -0,0 +1,231 @@
+package tn.spring.pispring.ServiceIMP;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * Cache des définitions de vulnérabilités InsightVM, indexé par ID de vulnérabilité.
+ * Taille bornée (LRU) avec expiration (TTL). Plusieurs threads qui ratent le même ID
+ * attendent un seul chargement HTTP.
+ */
+@Component
+public class VulnerabilityDefinitionCache {
+
+    private static final Logger LOGGER = Logger.getLogger(VulnerabilityDefinitionCache.class.getName());
+
+    public static class VulnerabilityDefinition {
+        private final String id;
+        private final String title;
+        private final String severity;
+        private final String vector;
+        private final String json;
+
+        VulnerabilityDefinition(String id, String title, String severity, String vector, String json) {
+            this.id = id;
+            this.title = title;
+            this.severity = severity;
+            this.vector = vector;
+            this.json = json;
+        }
+
+        public String getId(String defaultValue) {
+            return id != null ? id : defaultValue;
+        }
+
+        public String getTitle(String defaultValue) {
+            return title != null ? title : defaultValue;
+        }
+
+        public String getSeverity(String defaultValue) {
+            return severity != null ? severity : defaultValue;
+        }
+
+        public String getVector(String defaultValue) {
+            return vector != null ? vector : defaultValue;
+        }
+
+        public String getJson() {
+            return json;
+        }
+    }
+
+    private static class Entry {
+        final VulnerabilityDefinition definition;
+        final long expiresAt;
+
+        Entry(VulnerabilityDefinition definition, long expiresAt) {
+            this.definition = definition;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final int maxSize;
+    private final long ttlMillis;
+    private final Map<String, Entry> entries;
+    private final Map<String, CompletableFuture<VulnerabilityDefinition>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public VulnerabilityDefinitionCache(@Value("${insightvm.vulnerability-cache.max-size:10000}") int maxSize,
+                                        @Value("${insightvm.vulnerability-cache.ttl-minutes:60}") long ttlMinutes) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMinutes * 60 * 1000;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > VulnerabilityDefinitionCache.this.maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Retourne la définition en cache, ou la charge via {@code loader} (JSON brut de l'API,
+     * {@code null} si introuvable). Les échecs de chargement ne sont pas mis en cache.
+     */
+    public VulnerabilityDefinition get(String vulnerabilityId, Function<String, String> loader) {
+        return await(getAsync(vulnerabilityId, id -> CompletableFuture.completedFuture(loader.apply(id))));
+    }
+
+    /**
+     * Variante non bloquante de {@link #get} : les appelants concurrents d'un même ID
+     * partagent le même chargement en cours.
+     */
+    public CompletableFuture<VulnerabilityDefinition> getAsync(String vulnerabilityId,
+                                                               Function<String, CompletableFuture<String>> loader) {
+        VulnerabilityDefinition cached = lookup(vulnerabilityId);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return CompletableFuture.completedFuture(cached);
+        }
+        misses.incrementAndGet();
+
+        CompletableFuture<VulnerabilityDefinition> load = new CompletableFuture<>();
+        CompletableFuture<VulnerabilityDefinition> running = inFlight.putIfAbsent(vulnerabilityId, load);
+        if (running != null) {
+            return running;
+        }
+
+        // Un autre thread a pu terminer le chargement entre la recherche et l'inscription
+        VulnerabilityDefinition definition = lookup(vulnerabilityId);
+        if (definition != null) {
+            inFlight.remove(vulnerabilityId, load);
+            load.complete(definition);
+            return load;
+        }
+
+        loads.incrementAndGet();
+        CompletableFuture<String> pending;
+        try {
+            pending = loader.apply(vulnerabilityId);
+        } catch (RuntimeException e) {
+            pending = CompletableFuture.failedFuture(e);
+        }
+        pending.whenComplete((json, error) -> {
+            if (error != null) {
+                inFlight.remove(vulnerabilityId, load);
+                load.completeExceptionally(error);
+                return;
+            }
+            VulnerabilityDefinition loaded = parse(vulnerabilityId, json);
+            if (loaded != null) {
+                put(vulnerabilityId, loaded);
+            }
+            inFlight.remove(vulnerabilityId, load);
+            load.complete(loaded);
+        });
+        return load;
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        synchronized (entries) {
+            stats.put("size", entries.size());
+        }
+        stats.put("maxSize", maxSize);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRatio", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount));
+        stats.put("loads", loads.get());
+        stats.put("evictions", evictions.get());
+        stats.put("inFlight", inFlight.size());
+        return stats;
+    }
+
+    private VulnerabilityDefinition lookup(String vulnerabilityId) {
+        synchronized (entries) {
+            Entry entry = entries.get(vulnerabilityId);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAt < System.currentTimeMillis()) {
+                entries.remove(vulnerabilityId);
+                evictions.incrementAndGet();
+                return null;
+            }
+            return entry.definition;
+        }
+    }
+
+    private void put(String vulnerabilityId, VulnerabilityDefinition definition) {
+        synchronized (entries) {
+            entries.put(vulnerabilityId, new Entry(definition, System.currentTimeMillis() + ttlMillis));
+        }
+    }
+
+    private VulnerabilityDefinition parse(String vulnerabilityId, String json) {
+        if (json == null) {
+            return null;
+        }
+        try {
+            JsonNode node = mapper.readTree(json);
+            return new VulnerabilityDefinition(
+                    node.path("id").asText(null),
+                    node.path("title").asText(null),
+                    node.path("severity").asText(null),
+                    node.path("cvss").path("v2").path("vector").asText(null),
+                    json);
+        } catch (IOException e) {
+            LOGGER.severe("Erreur de lecture de la vulnérabilité " + vulnerabilityId + " : " + e.getMessage());
+            return null;
+        }
+    }
+
+    private VulnerabilityDefinition await(CompletableFuture<VulnerabilityDefinition> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -10,16 +10,21 @@ import org.springframework.security.authentication.UsernamePasswordAuthenticatio
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 import tn.spring.pispring.Entities.User;
+import tn.spring.pispring.Entities.UserPrinciple;
+import tn.spring.pispring.ServiceIMP.RefreshTokenService;
+import tn.spring.pispring.ServiceIMP.UserDetailsServiceImpl;
 import tn.spring.pispring.ServiceIMP.UserServiceIMP;
 
 import tn.spring.pispring.config.JWT.JwtAuthTokenFilter;
 import tn.spring.pispring.config.JWT.JwtProvider;
 import tn.spring.pispring.config.JWT.JwtResponse;
 import tn.spring.pispring.config.JWT.NewTokensResponses;
+import tn.spring.pispring.config.JWT.Security.BoundedPasswordEncoder;
 import tn.spring.pispring.dto.SignIn;
 import tn.spring.pispring.repo.RoleRepository;
 import tn.spring.pispring.repo.UserRepository;
@@ -27,6 +32,7 @@ import tn.spring.pispring.repo.UserRepository;
 import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @CrossOrigin(origins = "http://localhost:3000")
@@ -46,7 +52,7 @@ public class AuthRestAPIs {
     UserServiceIMP userServiceIMP;
 
     @Autowired
-    PasswordEncoder passwordEncoder;
+    BoundedPasswordEncoder passwordEncoder;
 
     @Autowired
     JwtProvider jwtProvider;
@@ -55,15 +61,23 @@ public class AuthRestAPIs {
     @Autowired
     JwtAuthTokenFilter jwtAuthTokenFilter;
 
+    @Autowired
+    RefreshTokenService refreshTokenService;
+
+    @Autowired
+    UserDetailsServiceImpl userDetailsService;
+
     @PostMapping("/signIn")
     public ResponseEntity<JwtResponse> authenticateUser(@RequestBody SignIn login, HttpServletRequest request) {
-        Optional<User> userByEmail = userRepository.findByEmail(login.getEmail());
-        Optional<User> userByUsername = userRepository.findByUsername(login.getEmail());
-
-        // Combine the results from both searches
-        Optional<User> user = userByEmail.isPresent() ? userByEmail : userByUsername;
+        // Même chargement (mis en cache) que celui de l'AuthenticationManager juste après
+        UserPrinciple user;
+        try {
+            user = (UserPrinciple) userDetailsService.loadUserByUsername(login.getEmail());
+        } catch (UsernameNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
 
-        if(user.get().isBlocked()&& user.get().isValid()){
+        if(user.isBlocked()&& user.isEnabled()){
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
 
@@ -72,9 +86,10 @@ public class AuthRestAPIs {
         SecurityContextHolder.getContext().setAuthentication(authentication);
 
 
-        List <String> jwt = jwtProvider.generateJwtTokens(authentication);
         UserDetails userDetails = (UserDetails) authentication.getPrincipal();
-        return ResponseEntity.ok(new JwtResponse(jwt.get(0),jwt.get(1), userDetails.getUsername(),user.get().getId(), userDetails.getAuthorities()));
+        String accessToken = jwtProvider.generateAccessToken(authentication);
+        String refreshToken = refreshTokenService.issue(userDetails.getUsername());
+        return ResponseEntity.ok(new JwtResponse(accessToken, refreshToken, userDetails.getUsername(),user.getId(), userDetails.getAuthorities()));
     }
 
 
@@ -94,15 +109,31 @@ public class AuthRestAPIs {
     @PostMapping("/refreshToken")
     public ResponseEntity<?> refreshToken( HttpServletRequest request) {
         String refreshToken = jwtAuthTokenFilter.extractRefreshToken(request);
-        if (refreshToken != null && jwtAuthTokenFilter.isValidRefreshToken(refreshToken)) {
-            String newAccessToken = jwtAuthTokenFilter.issueNewAccessToken(refreshToken);
-           // String newRefreshToken = jwtProvider.generateRefreshToken();
-            return ResponseEntity.ok(new NewTokensResponses(refreshToken, newAccessToken));
+        // Rotation : le refresh token présenté est consommé et remplacé
+        String newRefreshToken = refreshToken != null ? refreshTokenService.rotate(refreshToken) : null;
+        // Utilisateur bloqué entre-temps : pas de nouvel access token
+        String newAccessToken = newRefreshToken != null ? jwtAuthTokenFilter.issueNewAccessToken(newRefreshToken) : null;
+        if (newAccessToken != null) {
+            return ResponseEntity.ok(new NewTokensResponses(newRefreshToken, newAccessToken));
         } else {
             return ResponseEntity.badRequest().body("expired refresh token");
         }
     }
 
+    @GetMapping("/password-hashing/stats")
+    public Map<String, Object> getPasswordHashingStats() {
+        return passwordEncoder.getStats();
+    }
+
+    @PostMapping("/logout")
+    public ResponseEntity<?> logout(HttpServletRequest request) {
+        String refreshToken = jwtAuthTokenFilter.extractRefreshToken(request);
+        if (refreshToken != null && refreshTokenService.revoke(refreshToken)) {
+            return ResponseEntity.ok().build();
+        }
+        return ResponseEntity.badRequest().body("invalid refresh token");
+    }
+
 
     @RequestMapping(value = "/signup/employee/{roleName}", method = RequestMethod.POST)
     public ResponseEntity<User> registerUser(@Validated @RequestBody User user1,@PathVariable ("roleName")String roleName) {
@@ -4,12 +4,14 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import tn.spring.pispring.Entities.MailStructure;
 import tn.spring.pispring.Entities.Ticket;
 import tn.spring.pispring.Entities.User;
 import tn.spring.pispring.Entities.Vulnerability;
 import tn.spring.pispring.ServiceIMP.EmailService;
 import tn.spring.pispring.ServiceIMP.InsightVMService;
+import tn.spring.pispring.ServiceIMP.SiteRegistry;
 
 import javax.mail.MessagingException;
 import java.util.List;
@@ -22,15 +24,25 @@ public class InsightVMController {
     private InsightVMService insightVMService;
     @Autowired
     private EmailService emailService;
+    @Autowired
+    private SiteRegistry siteRegistry;
 
     @PostMapping("/generate-tickets-from-json")
     public List<Ticket> generateTicketsFromJson(@RequestBody String json) {
         // Call the service method to generate tickets from the provided JSON
         return insightVMService.generateTicketsFromJson(json);
     }
+    // Servi depuis le registre des sites ; 304 si l'instantané n'a pas changé
     @GetMapping("/sites/info")
-    public List<Map<String, Object>> getSiteInformation() {
-        return insightVMService.getSiteInformation();
+    public ResponseEntity<List<Map<String, Object>>> getSiteInformation(WebRequest request) {
+        SiteRegistry.Snapshot snapshot = siteRegistry.snapshot();
+        if (request.checkNotModified(snapshot.getETag(), snapshot.getLastModified())) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .eTag(snapshot.getETag())
+                .lastModified(snapshot.getLastModified())
+                .body(snapshot.getSiteInformation());
     }
     @GetMapping("/by-site-name/{siteName}")
     public List<Ticket> getTicketsBySiteName(@PathVariable String siteName)
@@ -51,7 +63,6 @@ public class InsightVMController {
     }
     @PutMapping("/{ticketId}/assign/{userId}")
     public Ticket assignTicketToUser(@PathVariable Long ticketId, @PathVariable Long userId) {
-        emailService.sendEmailOnTicketAssignment(ticketId, userId);
         return insightVMService.assignTicketToUser(ticketId, userId);
 
     }
@@ -85,13 +96,25 @@ public class InsightVMController {
     }
     @GetMapping("/vulnerabilities/{vulnId}")
     public ResponseEntity<String> getVulnerabilityDetails(@PathVariable String vulnId) {
-        String vulnerabilityDetails = insightVMService.getVulnerabilityDetails(vulnId);
+        String vulnerabilityDetails = insightVMService.getCachedVulnerabilityDetails(vulnId);
         if (vulnerabilityDetails != null) {
             return ResponseEntity.ok(vulnerabilityDetails);
         } else {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Vulnerability details not found");
         }
     }
+    @GetMapping("/insightvm/vulnerability-cache/stats")
+    public Map<String, Object> getVulnerabilityCacheStats() {
+        return insightVMService.getVulnerabilityCacheStats();
+    }
+    @GetMapping("/insightvm/http-pool/stats")
+    public Map<String, Object> getHttpPoolStats() {
+        return insightVMService.getHttpPoolStats();
+    }
+    @GetMapping("/mail/outbox/stats")
+    public Map<String, Object> getMailStats() {
+        return emailService.getMailStats();
+    }
     @PostMapping("/create")
     public ResponseEntity<Ticket> createTicketsForSite(
             @RequestParam String siteId
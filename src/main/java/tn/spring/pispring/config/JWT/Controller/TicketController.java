@@ -1,14 +1,28 @@
 package tn.spring.pispring.config.JWT.Controller;
 
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import tn.spring.pispring.Entities.Ticket;
 import tn.spring.pispring.Entities.TicketStatusHistory;
+import tn.spring.pispring.ServiceIMP.TicketAnalyticsService;
+import tn.spring.pispring.ServiceIMP.TicketEventBus;
+import tn.spring.pispring.ServiceIMP.TicketExportService;
+import tn.spring.pispring.ServiceIMP.TicketHistoryAnalyzer;
 import tn.spring.pispring.ServiceIMP.TicketService;
+import tn.spring.pispring.ServiceIMP.TicketStatsService;
+import tn.spring.pispring.dto.TicketPage;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.LocalDate;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @RestController
@@ -16,6 +30,14 @@ import java.util.Optional;
 public class TicketController {
     @Autowired
     TicketService ticketService;
+    @Autowired
+    TicketExportService ticketExportService;
+    @Autowired
+    TicketEventBus ticketEventBus;
+    @Autowired
+    TicketStatsService ticketStatsService;
+    @Autowired
+    TicketAnalyticsService ticketAnalyticsService;
     @PostMapping("/addTicket")
     public Ticket addTicket(@RequestBody Ticket ticket) {
         return ticketService.addTicket(ticket);
@@ -32,6 +54,64 @@ public class TicketController {
     public List<Ticket> findAllTickets() {
         return ticketService.findAllTickets();
     }
+    @GetMapping("/tickets")
+    public TicketPage findTickets(@RequestParam(required = false) Long afterId,
+                                  @RequestParam(defaultValue = "50") int size,
+                                  @RequestParam(required = false) Ticket.TicketStatus status,
+                                  @RequestParam(required = false) String severity,
+                                  @RequestParam(required = false) String site,
+                                  @RequestParam(required = false) Long assignee,
+                                  @RequestParam(required = false) Boolean archived) {
+        return ticketService.findTicketPage(afterId, size, status, severity, site, assignee, archived);
+    }
+    // Comptes par sévérité, statut, site et assigné, lus dans la rollup
+    @GetMapping("/tickets/stats")
+    public Map<String, Object> ticketStats() {
+        return ticketStatsService.getStats();
+    }
+    // MTTR, temps par statut et dépassements SLA des tickets résolus entre deux dates incluses
+    @GetMapping("/tickets/analytics")
+    public Map<String, Object> ticketAnalytics(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                               @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                               @RequestParam(defaultValue = "ALL") TicketHistoryAnalyzer.Dimension dimension) {
+        return ticketAnalyticsService.getReport(from, to, dimension);
+    }
+    // Recalcule les jours matérialisés, par exemple après une correction de l'historique
+    @PostMapping("/tickets/analytics/materialize")
+    public Map<String, Object> materializeTicketAnalytics(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                          @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return Collections.singletonMap("days", ticketAnalyticsService.materialize(from, to));
+    }
+    // Flux SSE des changements de tickets, filtrable par utilisateur assigné ou par site
+    @GetMapping(value = "/tickets/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter ticketEvents(@RequestParam(required = false) Long userId,
+                                   @RequestParam(required = false) String site,
+                                   @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return ticketEventBus.subscribe(userId, site, lastEventId);
+    }
+    @GetMapping("/tickets/events/stats")
+    public Map<String, Object> ticketEventStats() {
+        return ticketEventBus.getStats();
+    }
+    @GetMapping("/tickets/export")
+    public ResponseEntity<StreamingResponseBody> exportTickets(
+            @RequestParam(defaultValue = "NDJSON") TicketExportService.Format format) {
+        return export("tickets", format, out -> ticketExportService.exportTickets(out, format));
+    }
+    @GetMapping("/tickets/history/export")
+    public ResponseEntity<StreamingResponseBody> exportTicketHistory(
+            @RequestParam(defaultValue = "NDJSON") TicketExportService.Format format) {
+        return export("ticket-history", format, out -> ticketExportService.exportHistory(out, format));
+    }
+    private ResponseEntity<StreamingResponseBody> export(String name, TicketExportService.Format format,
+                                                         StreamingResponseBody body) {
+        boolean csv = format == TicketExportService.Format.CSV;
+        return ResponseEntity.ok()
+                .contentType(csv ? new MediaType("text", "csv") : new MediaType("application", "x-ndjson"))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"" + name + (csv ? ".csv" : ".ndjson") + "\"")
+                .body(body);
+    }
     @GetMapping("/findTicketById/{id}")
     public Ticket findTicketById(@PathVariable("id") long id) {
         return ticketService.findTicketById(id);
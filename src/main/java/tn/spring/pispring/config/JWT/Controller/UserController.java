@@ -4,6 +4,7 @@ package tn.spring.pispring.config.JWT.Controller;
 import tn.spring.pispring.dto.ResetPass;
 import tn.spring.pispring.dto.RoleName;
 import tn.spring.pispring.Entities.User;
+import tn.spring.pispring.ServiceIMP.ReferenceDataCache;
 import tn.spring.pispring.ServiceIMP.UserServiceIMP;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
@@ -11,6 +12,7 @@ import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @CrossOrigin
@@ -19,11 +21,20 @@ public class UserController {
 
 @Autowired
 UserServiceIMP userServiceIMP;
+@Autowired
+ReferenceDataCache referenceDataCache;
    /* @PutMapping("/debloque-user/{idUser}")
     public void debloqueUser(@PathVariable("idUser") Long idUser) {
         userServiceIMP.debloqueUser(idUser);
     }*/
 
+    // Taux de succès par région du cache de second niveau (rôles, utilisateurs)
+    @GetMapping("/cache/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public Map<String, Object> referenceCacheStats() {
+        return referenceDataCache.getStats();
+    }
+
     @GetMapping("/list-user")
     @PreAuthorize("hasRole('ADMIN')")
     public List<User> ListUser() {
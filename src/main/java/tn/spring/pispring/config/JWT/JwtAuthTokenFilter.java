@@ -1,35 +1,37 @@
 package tn.spring.pispring.config.JWT;
 
 import io.jsonwebtoken.Claims;
-import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.SignatureAlgorithm;
 import lombok.AllArgsConstructor;
 import lombok.NoArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
-import org.springframework.stereotype.Component;
+import tn.spring.pispring.Entities.UserPrinciple;
+import tn.spring.pispring.ServiceIMP.RefreshTokenService;
+import tn.spring.pispring.ServiceIMP.TokenVersionCache;
 import tn.spring.pispring.ServiceIMP.UserDetailsServiceImpl;
-import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.AuthenticationException;
 import javax.servlet.http.HttpServletResponse;
 
 import javax.servlet.*;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
 import java.io.IOException;
-import java.util.Date;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
 
+// Déclaré comme bean par SecurityConfig, qui ne l'inscrit que dans la chaîne de Spring Security
 @NoArgsConstructor
 @AllArgsConstructor
-@Component
 public class JwtAuthTokenFilter implements Filter {
 
     @Value("${cryptoserver.app.jwtSecret}")
@@ -41,23 +43,71 @@ public class JwtAuthTokenFilter implements Filter {
     private JwtProvider tokenProvider;
     @Autowired
     private UserDetailsServiceImpl userDetailsService;
+    @Autowired
+    private TokenVersionCache tokenVersionCache;
+    @Autowired
+    private RefreshTokenService refreshTokenService;
+    @Autowired
+    private JwtAuthEntryPoint authEntryPoint;
+
+    // Construire le principal à partir des claims du token, sans requête sur les utilisateurs
+    @Value("${cryptoserver.app.jwtStatelessAuth:true}")
+    private boolean statelessAuth;
 
     private static final Logger logger = LoggerFactory.getLogger(JwtAuthTokenFilter.class);
 
 
-    public void setAuthentication(String jwt, HttpServletRequest request) {
-        String username = tokenProvider.getUserNameFromJwtToken(jwt);
-        UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+    // Retourne false si ce n'est pas un access token complet ou s'il a été révoqué depuis son émission
+    public boolean setAuthentication(String jwt, HttpServletRequest request) {
+        Claims claims = tokenProvider.getClaimsFromJwtToken(jwt);
+        // Un refresh token (jti, famille) ne vaut jamais authentification
+        UserPrinciple claimed = isAccessToken(claims) ? principalFromClaims(claims) : null;
+        if (claimed == null || !tokenVersionCache.isCurrent(claimed.getId(), claimed.getTokenVersion())) {
+            // Token révoqué (mot de passe changé, utilisateur bloqué ou supprimé) ou sans claims
+            SecurityContextHolder.clearContext();
+            return false;
+        }
+        UserDetails userDetails = claimed;
+        if (!statelessAuth) {
+            // Mode sans état désactivé : principal relu depuis la base
+            UserPrinciple loaded = (UserPrinciple) userDetailsService.loadUserByUsername(claims.getSubject());
+            if (loaded.isBlocked()) {
+                SecurityContextHolder.clearContext();
+                return false;
+            }
+            userDetails = loaded;
+        }
         UsernamePasswordAuthenticationToken authentication =
                 new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
         authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
         SecurityContextHolder.getContext().setAuthentication(authentication);
+        return true;
+    }
 
-
+    private static boolean isAccessToken(Claims claims) {
+        return JwtProvider.ACCESS_TOKEN_TYPE.equals(claims.get(JwtProvider.TOKEN_TYPE_CLAIM, String.class))
+                && claims.getId() == null
+                && claims.get(JwtProvider.FAMILY_CLAIM) == null;
     }
 
 
 
+    private UserPrinciple principalFromClaims(Claims claims) {
+        Long userId = claims.get(JwtProvider.USER_ID_CLAIM, Long.class);
+        Long tokenVersion = claims.get(JwtProvider.TOKEN_VERSION_CLAIM, Long.class);
+        Boolean verified = claims.get(JwtProvider.VERIFIED_CLAIM, Boolean.class);
+        Object roles = claims.get(JwtProvider.ROLES_CLAIM);
+        // Token émis avant l'ajout de ces claims : refusé, l'utilisateur se reconnecte
+        if (userId == null || tokenVersion == null || verified == null || !(roles instanceof List)) {
+            return null;
+        }
+        List<GrantedAuthority> authorities = ((List<?>) roles).stream()
+                .map(role -> new SimpleGrantedAuthority(String.valueOf(role)))
+                .collect(Collectors.toList());
+        return new UserPrinciple(userId, claims.get(JwtProvider.NAME_CLAIM, String.class), claims.getSubject(),
+                claims.get(JwtProvider.EMAIL_CLAIM, String.class), null, authorities, verified, tokenVersion);
+    }
+
     // Modify JwtAuthTokenFilter to handle refresh tokens from session
     public String getJwt(HttpServletRequest request, HttpSession session) {
     // Check for access token
@@ -67,6 +117,9 @@ public class JwtAuthTokenFilter implements Filter {
     }
 
     // Check for refresh token from session
+    if (session == null) {
+        return null;
+    }
     String refreshToken = (String) session.getAttribute("refreshToken");
     if (refreshToken != null && isValidRefreshToken(refreshToken)) {
         // Issue new access token
@@ -79,21 +132,18 @@ public class JwtAuthTokenFilter implements Filter {
     return null;
 }
 
+    // Access token complet (mêmes claims qu'à la connexion) pour le titulaire du refresh token
     public String issueNewAccessToken(String refreshToken) {
         try {
-            // Parse the refresh token to get user details
-            Claims claims = Jwts.parser().setSigningKey(jwtSecret).parseClaimsJws(refreshToken).getBody();
-            String username = claims.getSubject();
-
-            // Generate a new access token for the user
-            //UserPrinciple userPrincipal = (UserPrinciple) authentication.getPrincipal();
-            long ACCESS_TOKEN_VALIDITY_MS =     60 * 1000; // 5 hours
-            return Jwts.builder()
-                    .setSubject(username)
-                    .setIssuedAt(new Date())
-                    .setExpiration(new Date((new Date()).getTime() + ACCESS_TOKEN_VALIDITY_MS))
-                    .signWith(SignatureAlgorithm.HS512, jwtSecret)
-                    .compact();
+            Claims claims = tokenProvider.getClaimsFromJwtToken(refreshToken);
+            if (!JwtProvider.REFRESH_TOKEN_TYPE.equals(claims.get(JwtProvider.TOKEN_TYPE_CLAIM, String.class))) {
+                return null;
+            }
+            UserPrinciple user = (UserPrinciple) userDetailsService.loadUserByUsername(claims.getSubject());
+            if (user.isBlocked()) {
+                return null;
+            }
+            return tokenProvider.generateAccessToken(new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities()));
         } catch (Exception e) {
        //     logger.error("Error issuing new access token: {}", e.getMessage());
             return null;
@@ -102,9 +152,8 @@ public class JwtAuthTokenFilter implements Filter {
 
     public boolean isValidRefreshToken(String refreshToken) {
         try {
-            // Validate the refresh token's signature and expiration
-            Jwts.parser().setSigningKey(jwtSecret).parseClaimsJws(refreshToken);
-            return true;
+            // Validate the refresh token's signature, expiration and revocation
+            return refreshTokenService.isValid(refreshToken);
         } catch (Exception e) {
    //         logger.error("Invalid refresh token: {}", e.getMessage());
             return false;
@@ -120,54 +169,45 @@ public class JwtAuthTokenFilter implements Filter {
         return null;
     }
 
+    // Routes d'authentification : le token y est absent ou traité par le contrôleur
+    private static final List<String> EXCLUDED_URLS = Arrays.asList(
+            "/api/user/forgetpass", "/api/auth/", "/OTP/", "/Msg", "/api/auth/refreshToken");
+
+    /**
+     * Authentifie la requête quand elle porte un token ; un token invalide, expiré ou révoqué
+     * est refusé en 401. Sans token, la requête continue sans authentification et les règles
+     * de SecurityConfig décident.
+     */
     @Override
     public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
             throws IOException, ServletException {
-
-   /*    HttpServletRequest httpRequest = (HttpServletRequest) request;
-        HttpSession session = httpRequest.getSession();
-
-        Set<String> excludedUrls = new HashSet<>();
-        excludedUrls.add("/api/user/forgetpass");
-        excludedUrls.add("/api/auth/");
-        excludedUrls.add("/OTP/");
-        excludedUrls.add("/Msg");
-        excludedUrls.add("/api/auth/refreshToken");
-
-
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
         String requestUri = httpRequest.getRequestURI();
-        boolean isExcluded = false;
-        for (String excludedUrl : excludedUrls) {
-            if (requestUri.startsWith(excludedUrl)) {
-                isExcluded = true;
-                break;
-            }
+        if (EXCLUDED_URLS.stream().anyMatch(requestUri::startsWith)) {
+            chain.doFilter(request, response);
+            return;
         }
 
-        if (isExcluded) {
-            chain.doFilter(request, response);
+        // API sans état : on ne crée pas de session, on lit seulement celle qui existe
+        String jwt = getJwt(httpRequest, httpRequest.getSession(false));
+        if (jwt != null && !authenticate(jwt, httpRequest)) {
+            SecurityContextHolder.clearContext();
+            authEntryPoint.commence(httpRequest, (HttpServletResponse) response,
+                    new BadCredentialsException("Token expired, invalid or revoked"));
             return;
         }
+        chain.doFilter(request, response);
+    }
 
+    private boolean authenticate(String jwt, HttpServletRequest request) {
+        if (!tokenProvider.validateJwtToken(jwt)) {
+            return false;
+        }
         try {
-            String jwt = getJwt(httpRequest, session);
-            if (jwt != null && tokenProvider.validateJwtToken(jwt)) {
-                setAuthentication(jwt, httpRequest);
-            } else {
-                // If token is invalid or expired, handle authentication error
-                JwtAuthEntryPoint authEntryPoint = new JwtAuthEntryPoint();
-                AuthenticationException AuthenticationException = new AuthenticationException("Token expired or invalid") {
-                };
-                authEntryPoint.commence(httpRequest, (HttpServletResponse) response,  AuthenticationException );
-                return;
-            }
-        } catch (Exception e) {
-            // Handle other exceptions if needed
-            e.printStackTrace();
+            return setAuthentication(jwt, request);
+        } catch (UsernameNotFoundException e) {
+            return false;
         }
-
-    */
-        chain.doFilter(request, response);
     }
 
     public String extractRefreshToken(HttpServletRequest request) {
@@ -1,16 +1,29 @@
 package tn.spring.pispring.config.JWT;
 
 import io.jsonwebtoken.*;
+import io.jsonwebtoken.impl.TextCodec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.stereotype.Component;
 import tn.spring.pispring.Entities.UserPrinciple;
 
+import javax.annotation.PostConstruct;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
 
 @Component
 public class JwtProvider {
@@ -23,31 +36,99 @@ public class JwtProvider {
     @Value("${cryptoserver.app.jwtExpiration}")
     private int jwtExpiration;
 
+    // Claims embarqués dans l'access token pour l'authentification sans état
+    public static final String USER_ID_CLAIM = "uid";
+    public static final String ROLES_CLAIM = "roles";
+    public static final String TOKEN_VERSION_CLAIM = "ver";
+    public static final String VERIFIED_CLAIM = "vrf";
+    public static final String NAME_CLAIM = "name";
+    public static final String EMAIL_CLAIM = "email";
+    // Famille de rotation d'un refresh token (voir RefreshTokenService)
+    public static final String FAMILY_CLAIM = "fam";
+    // Type du token : seul un access token authentifie une requête
+    public static final String TOKEN_TYPE_CLAIM = "typ";
+    public static final String ACCESS_TOKEN_TYPE = "access";
+    public static final String REFRESH_TOKEN_TYPE = "refresh";
+
+    public static final long REFRESH_TOKEN_VALIDITY_MS = 2L * 7 * 24 * 60 * 60 * 1000;
+
+    @Value("${cryptoserver.app.verifiedTokenCache.maxSize:10000}")
+    private int verifiedTokenCacheSize;
+
+    // Clé HMAC dérivée une seule fois du secret (même décodage base64 que signWith(alg, String))
+    private Key signingKey;
+    private JwtParser parser;
+
+    private static class VerifiedToken {
+        final Claims claims;
+        final long expiresAt;
+
+        VerifiedToken(Claims claims, long expiresAt) {
+            this.claims = claims;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    // Tokens dont la signature a déjà été vérifiée (LRU, clé = SHA-256 du token), jusqu'à leur expiration
+    private Map<String, VerifiedToken> verifiedTokens;
+
+    @PostConstruct
+    public void init() {
+        signingKey = new SecretKeySpec(TextCodec.BASE64.decode(jwtSecret), SignatureAlgorithm.HS512.getJcaName());
+        parser = Jwts.parser().setSigningKey(signingKey);
+        int maxSize = verifiedTokenCacheSize;
+        verifiedTokens = new LinkedHashMap<String, VerifiedToken>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, VerifiedToken> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public Key getSigningKey() {
+        return signingKey;
+    }
+
     public String generateAccessToken(Authentication authentication) {
 
         UserPrinciple userPrincipal = (UserPrinciple) authentication.getPrincipal();
        // long ACCESS_TOKEN_VALIDITY_MS =    50 * 1000;
         long ACCESS_TOKEN_VALIDITY_MS =  5 * 24 * 60 * 60 * 1000;
+        List<String> roles = userPrincipal.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority)
+                .collect(Collectors.toList());
         return Jwts.builder()
                 .setSubject((userPrincipal.getUsername()))
+                .claim(TOKEN_TYPE_CLAIM, ACCESS_TOKEN_TYPE)
+                .claim(USER_ID_CLAIM, userPrincipal.getId())
+                .claim(ROLES_CLAIM, roles)
+                .claim(TOKEN_VERSION_CLAIM, userPrincipal.getTokenVersion())
+                .claim(VERIFIED_CLAIM, userPrincipal.isEnabled())
+                .claim(NAME_CLAIM, userPrincipal.getName())
+                .claim(EMAIL_CLAIM, userPrincipal.getEmail())
                 .setIssuedAt(new Date())
                 .setExpiration(new Date((new Date()).getTime() + ACCESS_TOKEN_VALIDITY_MS))
-                .signWith(SignatureAlgorithm.HS512, jwtSecret)
+                .signWith(SignatureAlgorithm.HS512, signingKey)
                 .compact();
     }
     public String generateRefreshToken(Authentication authentication) {
         //long refreshTokenExpiration =  10*60 * 1000;
-        long refreshTokenExpiration = 2L * 7 * 24 * 60 * 60 * 1000;
-
         UserPrinciple userPrincipal = (UserPrinciple) authentication.getPrincipal();
 
         // Create refresh token
-        return Jwts.builder()
-                .setSubject((userPrincipal.getUsername()))
+        return generateRefreshToken(userPrincipal.getUsername(), UUID.randomUUID().toString(), UUID.randomUUID().toString(),
+                new Date(System.currentTimeMillis() + REFRESH_TOKEN_VALIDITY_MS));
+    }
 
+    public String generateRefreshToken(String username, String jti, String familyId, Date expiresAt) {
+        return Jwts.builder()
+                .setSubject(username)
+                .setId(jti)
+                .claim(TOKEN_TYPE_CLAIM, REFRESH_TOKEN_TYPE)
+                .claim(FAMILY_CLAIM, familyId)
                 .setIssuedAt(new Date())
-                .setExpiration(new Date(System.currentTimeMillis() + refreshTokenExpiration))
-                .signWith(SignatureAlgorithm.HS512, jwtSecret)
+                .setExpiration(expiresAt)
+                .signWith(SignatureAlgorithm.HS512, signingKey)
                 .compact();
     }
 
@@ -73,7 +154,7 @@ public class JwtProvider {
 
     public boolean validateJwtToken(String authToken) {
         try {
-            Jwts.parser().setSigningKey(jwtSecret).parseClaimsJws(authToken);
+            getClaimsFromJwtToken(authToken);
             return true;
         } catch (SignatureException e) {
             logger.error("Invalid JWT signature -> Message: {} ", e);
@@ -91,9 +172,41 @@ public class JwtProvider {
     }
 
     public String getUserNameFromJwtToken(String token) {
-        return Jwts.parser()
-                .setSigningKey(jwtSecret)
-                .parseClaimsJws(token)
-                .getBody().getSubject();
+        return getClaimsFromJwtToken(token).getSubject();
+    }
+
+    public Claims getClaimsFromJwtToken(String token) {
+        long now = System.currentTimeMillis();
+        String key = verifiedTokenCacheSize > 0 && token != null ? digest(token) : null;
+        if (key != null) {
+            synchronized (verifiedTokens) {
+                VerifiedToken verified = verifiedTokens.get(key);
+                if (verified != null) {
+                    if (verified.expiresAt > now) {
+                        return verified.claims;
+                    }
+                    verifiedTokens.remove(key);
+                }
+            }
+        }
+
+        // Lève ExpiredJwtException, SignatureException... comme avant
+        Claims claims = parser.parseClaimsJws(token).getBody();
+        if (key != null && claims.getExpiration() != null) {
+            synchronized (verifiedTokens) {
+                verifiedTokens.put(key, new VerifiedToken(claims, claims.getExpiration().getTime()));
+            }
+        }
+        return claims;
+    }
+
+    // Empreinte du token : la clé du cache ne garde pas le token lui-même
+    private static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 }
@@ -1,10 +1,19 @@
 package tn.spring.pispring.config.JWT;
 
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.NoopHostnameVerifier;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.ssl.SSLContextBuilder;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.client.RestTemplate;
@@ -13,24 +22,85 @@ import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
 import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
 
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 
 @Configuration
 public class RestTemplateConfig {
 
+    @Value("${insightvm.http.max-total:64}")
+    private int maxTotal;
+
+    @Value("${insightvm.http.max-per-route:32}")
+    private int maxPerRoute;
+
+    @Value("${insightvm.http.connect-timeout-ms:5000}")
+    private int connectTimeoutMs;
+
+    @Value("${insightvm.http.read-timeout-ms:30000}")
+    private int readTimeoutMs;
+
+    @Value("${insightvm.http.pool-timeout-ms:10000}")
+    private int poolTimeoutMs;
+
+    @Value("${insightvm.http.keep-alive-ms:30000}")
+    private long keepAliveMs;
+
+    @Value("${insightvm.http.idle-eviction-ms:60000}")
+    private long idleEvictionMs;
+
+    @Value("${insightvm.http.compression:true}")
+    private boolean compression;
+
     @Bean
-    public RestTemplate restTemplate() throws Exception {
+    public PoolingHttpClientConnectionManager insightVMConnectionManager() throws Exception {
         SSLContext sslContext = SSLContextBuilder.create()
                 .loadTrustMaterial((chain, authType) -> true).build();
 
         SSLConnectionSocketFactory socketFactory = new SSLConnectionSocketFactory(sslContext, NoopHostnameVerifier.INSTANCE);
 
-        CloseableHttpClient httpClient = HttpClients.custom()
-                .setSSLSocketFactory(socketFactory)
+        Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("https", socketFactory)
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
                 .build();
 
-        HttpComponentsClientHttpRequestFactory factory = new HttpComponentsClientHttpRequestFactory(httpClient);
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(registry);
+        connectionManager.setMaxTotal(maxTotal);
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        // Revalider une connexion restée inactive avant de la réutiliser
+        connectionManager.setValidateAfterInactivity(2000);
+        return connectionManager;
+    }
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient insightVMHttpClient(PoolingHttpClientConnectionManager insightVMConnectionManager) {
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeoutMs)
+                .setSocketTimeout(readTimeoutMs)
+                .setConnectionRequestTimeout(poolTimeoutMs)
+                .setContentCompressionEnabled(compression)
+                .build();
+
+        HttpClientBuilder builder = HttpClients.custom()
+                .setConnectionManager(insightVMConnectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy((response, context) -> {
+                    // Respecter le Keep-Alive du serveur, sans dépasser la durée configurée
+                    long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return serverKeepAlive > 0 ? Math.min(serverKeepAlive, keepAliveMs) : keepAliveMs;
+                })
+                .evictExpiredConnections()
+                .evictIdleConnections(idleEvictionMs, TimeUnit.MILLISECONDS);
+        if (!compression) {
+            builder.disableContentCompression();
+        }
+        return builder.build();
+    }
+
+    @Bean
+    public RestTemplate restTemplate(CloseableHttpClient insightVMHttpClient) {
+        HttpComponentsClientHttpRequestFactory factory = new HttpComponentsClientHttpRequestFactory(insightVMHttpClient);
 
         return new RestTemplate(factory);
     }
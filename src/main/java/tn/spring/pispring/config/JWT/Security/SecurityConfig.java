@@ -2,6 +2,8 @@ package tn.spring.pispring.config.JWT.Security;
 
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -26,6 +28,13 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
     public JwtAuthTokenFilter authenticationJwtTokenFilter() {
         return new JwtAuthTokenFilter();
     }
+    // Le filtre tourne dans la chaîne de Spring Security uniquement, pas une seconde fois côté conteneur
+    @Bean
+    public FilterRegistrationBean<JwtAuthTokenFilter> jwtAuthTokenFilterRegistration(JwtAuthTokenFilter filter) {
+        FilterRegistrationBean<JwtAuthTokenFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.setEnabled(false);
+        return registration;
+    }
     @Bean
     public AuthenticationEntryPoint authenticationEntryPoint() {
         return jwtAuthEntryPoint;
@@ -68,9 +77,12 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
         return super.authenticationManagerBean();
     }
 
-    @Bean
-    public PasswordEncoder passwordEncoder()
+    // BCrypt sur un pool borné : voir BoundedPasswordEncoder
+    @Bean(destroyMethod = "shutdown")
+    public BoundedPasswordEncoder passwordEncoder(@Value("${security.password-hashing.threads:4}") int threads,
+                                                  @Value("${security.password-hashing.queue-capacity:4}") int queueCapacity,
+                                                  @Value("${security.password-hashing.timeout-ms:250}") long timeoutMs)
     {
-        return new BCryptPasswordEncoder();
+        return new BoundedPasswordEncoder(new BCryptPasswordEncoder(), threads, queueCapacity, timeoutMs);
     }
 }
@@ -10,13 +10,19 @@ import java.util.Date;
 
 
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_otp_identification", columnList = "identification"),
+        @Index(name = "idx_otp_expires_at", columnList = "expires_at")
+})
 @AllArgsConstructor
 @NoArgsConstructor
 @Setter
 @Getter
 public class OTP {
     String identification;
-    @Temporal(TemporalType.DATE)
+    // Horodatage complet : l'ancienne colonne DATE tronquait l'expiration de 5 minutes au jour
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "expires_at")
     Date expiredDate;
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO)
@@ -0,0 +1,21 @@
+package tn.spring.pispring.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class TicketDraft {
+    // assetId sous lequel un ticket existant est recherché
+    private String lookupAssetId;
+    // assetId enregistré sur un nouveau ticket
+    private String assetId;
+    private String severity;
+    private String description;
+    private String remediation;
+    private String siteName;
+}
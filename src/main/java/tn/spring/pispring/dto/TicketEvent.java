@@ -0,0 +1,35 @@
+package tn.spring.pispring.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import tn.spring.pispring.Entities.Ticket;
+
+import java.time.LocalDateTime;
+
+// Changement de ticket poussé aux tableaux de bord ; id croissant, réutilisé comme Last-Event-ID
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class TicketEvent {
+
+    public enum Type {
+        CREATED,
+        UPDATED,
+        STATUS_CHANGED,
+        ASSIGNED
+    }
+
+    private long id;
+    private Type type;
+    private Long ticketId;
+    private String assetId;
+    private String siteName;
+    private String severity;
+    private Ticket.TicketStatus status;
+    private boolean archived;
+    private Long assigneeId;
+    private LocalDateTime at;
+}
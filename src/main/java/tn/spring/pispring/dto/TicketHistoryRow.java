@@ -0,0 +1,23 @@
+package tn.spring.pispring.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import tn.spring.pispring.Entities.Ticket;
+
+import java.time.LocalDateTime;
+
+// Ligne d'historique aplatie avec les colonnes du ticket utiles au reporting
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class TicketHistoryRow {
+    private Long id;
+    private Long ticketId;
+    private String assetId;
+    private String siteName;
+    private Ticket.TicketStatus status;
+    private LocalDateTime changeDate;
+}
@@ -0,0 +1,18 @@
+package tn.spring.pispring.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class TicketPage {
+    private List<TicketSummary> items;
+    // Dernier id de la page, à repasser en afterId ; null quand il n'y a plus de résultats
+    private Long nextCursor;
+}
@@ -0,0 +1,29 @@
+package tn.spring.pispring.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import tn.spring.pispring.Entities.Ticket;
+
+import java.time.LocalDateTime;
+
+/**
+ * Vue allégée d'un ticket pour les listes : construite directement par la requête JPQL,
+ * sans entité gérée ni association paresseuse à initialiser.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class TicketSummary {
+    private Long id;
+    private String assetId;
+    private String severity;
+    private Ticket.TicketStatus status;
+    private String siteName;
+    private boolean archived;
+    private LocalDateTime slaDeadline;
+    private Long assigneeId;
+    private String assigneeUsername;
+}
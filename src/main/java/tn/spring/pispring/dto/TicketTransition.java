@@ -0,0 +1,24 @@
+package tn.spring.pispring.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import tn.spring.pispring.Entities.Ticket;
+
+import java.time.LocalDateTime;
+
+// Changement de statut avec les dimensions du ticket utiles aux analyses (MTTR, SLA)
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class TicketTransition {
+    private Long ticketId;
+    private Ticket.TicketStatus status;
+    private LocalDateTime changeDate;
+    private String severity;
+    private String siteName;
+    private Long assigneeId;
+    private LocalDateTime slaDeadline;
+}
@@ -1,5 +1,6 @@
 package tn.spring.pispring.helper;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -13,4 +14,13 @@ public class ApiExceptionsHandler {
         ErrorDetails details = new ErrorDetails(ex.getMessage(), request.getDescription(false));
         return new ResponseEntity(details, ex.getStatusCode());
 
+}
+
+@ExceptionHandler(TooManyRequestsException.class)
+    public ResponseEntity<ErrorDetails> handleTooManyRequests (TooManyRequestsException ex, WebRequest request){
+        ErrorDetails details = new ErrorDetails(ex.getMessage(), request.getDescription(false));
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, "1");
+        return new ResponseEntity(details, headers, ex.getStatusCode());
+
 }}
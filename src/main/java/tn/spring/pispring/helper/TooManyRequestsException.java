@@ -0,0 +1,14 @@
+package tn.spring.pispring.helper;
+
+import org.springframework.http.HttpStatus;
+
+public class TooManyRequestsException extends RuntimeException{
+
+    public TooManyRequestsException(String msg){
+        super(msg);
+    }
+
+    public HttpStatus getStatusCode() {
+        return HttpStatus.TOO_MANY_REQUESTS;
+    }
+}
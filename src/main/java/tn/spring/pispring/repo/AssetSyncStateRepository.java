@@ -0,0 +1,29 @@
+package tn.spring.pispring.repo;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import tn.spring.pispring.Entities.AssetSyncState;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface AssetSyncStateRepository extends JpaRepository<AssetSyncState, Long> {
+    List<AssetSyncState> findBySiteIdAndAssetIdIn(String siteId, Collection<String> assetIds);
+
+    @Transactional
+    @Modifying
+    @Query("update AssetSyncState s set s.lastSeenAt = :seenAt where s.siteId = :siteId and s.assetId in :assetIds")
+    int markSeen(@Param("siteId") String siteId, @Param("assetIds") Collection<String> assetIds, @Param("seenAt") LocalDateTime seenAt);
+
+    // Assets qui n'ont pas été revus pendant la synchronisation commencée à :since
+    @Transactional
+    @Modifying
+    @Query("delete from AssetSyncState s where s.siteId = :siteId and (s.lastSeenAt is null or s.lastSeenAt < :since)")
+    int deleteNotSeenSince(@Param("siteId") String siteId, @Param("since") LocalDateTime since);
+}
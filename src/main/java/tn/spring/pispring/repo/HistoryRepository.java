@@ -1,10 +1,49 @@
 package tn.spring.pispring.repo;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import tn.spring.pispring.Entities.Ticket;
 import tn.spring.pispring.Entities.TicketStatusHistory;
+import tn.spring.pispring.dto.TicketHistoryRow;
+import tn.spring.pispring.dto.TicketTransition;
+
+import javax.persistence.QueryHint;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.stream.Stream;
 
 @Repository
 public interface HistoryRepository extends JpaRepository<TicketStatusHistory, Long> {
     TicketStatusHistory findTicketStatusHistoriesByTicket(Long id);
+
+    @QueryHints({
+            @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = TicketRepository.EXPORT_FETCH_SIZE),
+            @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_READONLY, value = "true")
+    })
+    @Query("select new tn.spring.pispring.dto.TicketHistoryRow(h.id, t.id, t.assetId, t.siteName, h.status, h.changeDate) " +
+            "from TicketStatusHistory h join h.ticket t order by h.id")
+    Stream<TicketHistoryRow> streamRows();
+
+    /**
+     * Historique complet, trié par ticket puis par date, des tickets passés dans un des statuts
+     * donnés sur [from, to) : de quoi calculer délais de résolution et temps par statut en une passe.
+     */
+    @QueryHints({
+            @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = TicketRepository.EXPORT_FETCH_SIZE),
+            @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_READONLY, value = "true")
+    })
+    @Query("select new tn.spring.pispring.dto.TicketTransition(t.id, h.status, h.changeDate, t.severity, t.siteName, u.id, t.slaDeadline) " +
+            "from TicketStatusHistory h join h.ticket t left join t.user u " +
+            "where t.id in (select r.ticket.id from TicketStatusHistory r " +
+            "where r.status in :statuses and r.changeDate >= :from and r.changeDate < :to) " +
+            "order by t.id, h.changeDate, h.id")
+    Stream<TicketTransition> streamTransitionsOfTicketsReaching(@Param("statuses") Collection<Ticket.TicketStatus> statuses,
+                                                                @Param("from") LocalDateTime from,
+                                                                @Param("to") LocalDateTime to);
+
+    @Query("select min(h.changeDate) from TicketStatusHistory h")
+    LocalDateTime findFirstChangeDate();
 }
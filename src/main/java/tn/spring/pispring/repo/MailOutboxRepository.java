@@ -0,0 +1,36 @@
+package tn.spring.pispring.repo;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import tn.spring.pispring.Entities.MailOutbox;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface MailOutboxRepository extends JpaRepository<MailOutbox, Long> {
+    @Query("select m.id from MailOutbox m where m.status = :status and m.nextAttemptAt <= :now order by m.id asc")
+    List<Long> findDueIds(@Param("status") MailOutbox.MailStatus status,
+                          @Param("now") LocalDateTime now,
+                          Pageable pageable);
+
+    // Réserve les mails encore dus : un autre nœud qui les a déjà pris a repoussé nextAttemptAt
+    @Transactional
+    @Modifying
+    @Query("update MailOutbox m set m.claimToken = :token, m.nextAttemptAt = :leaseUntil " +
+            "where m.id in :ids and m.status = :status and m.nextAttemptAt <= :now")
+    int claim(@Param("ids") List<Long> ids,
+              @Param("status") MailOutbox.MailStatus status,
+              @Param("now") LocalDateTime now,
+              @Param("token") String token,
+              @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    List<MailOutbox> findByClaimTokenOrderByIdAsc(String claimToken);
+
+    long countByStatus(MailOutbox.MailStatus status);
+}
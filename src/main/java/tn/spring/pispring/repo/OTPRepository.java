@@ -1,10 +1,17 @@
 package tn.spring.pispring.repo;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import tn.spring.pispring.dto.OTP;
 
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 
 @Repository
 
@@ -12,4 +19,22 @@ public interface OTPRepository extends JpaRepository<OTP, Long> {
     OTP findByIdentificationAndExpiredDateAfter(String identification, Date now);
 
     OTP findByIdentification(String identification);
+
+    boolean existsByIdentificationAndExpiredDateAfter(String identification, Date now);
+
+    // Vérification à usage unique : le code valide est supprimé par la même requête
+    @Transactional
+    @Modifying
+    @Query("delete from OTP o where o.identification = :identification and o.expiredDate > :now")
+    int consume(@Param("identification") String identification, @Param("now") Date now);
+
+    // Purge par lots pour ne pas verrouiller la table d'un coup ; les lignes sans expiration datent de l'ancienne colonne DATE.
+    // En JPQL plutôt qu'en SQL natif : un DELETE natif viderait toutes les régions du cache de second niveau.
+    @Query("select o.id from OTP o where o.expiredDate < :now or o.expiredDate is null")
+    List<Long> findExpiredIds(@Param("now") Date now, Pageable pageable);
+
+    @Transactional
+    @Modifying
+    @Query("delete from OTP o where o.id in :ids")
+    int deleteByIds(@Param("ids") Collection<Long> ids);
 }
@@ -0,0 +1,32 @@
+package tn.spring.pispring.repo;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import tn.spring.pispring.Entities.RefreshTokenFamily;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface RefreshTokenFamilyRepository extends JpaRepository<RefreshTokenFamily, String> {
+
+    // Prolonge une famille non révoquée : 0 si elle l'est. Le verrou de ligne est tenu jusqu'au commit,
+    // une révocation concurrente attend donc que le token émis soit visible pour le révoquer aussi
+    @Transactional
+    @Modifying
+    @Query("update RefreshTokenFamily f set f.expiresAt = :expiresAt where f.familyId = :familyId and f.revoked = false")
+    int extend(@Param("familyId") String familyId, @Param("expiresAt") LocalDateTime expiresAt);
+
+    @Transactional
+    @Modifying
+    @Query("update RefreshTokenFamily f set f.revoked = true where f.familyId = :familyId")
+    int revoke(@Param("familyId") String familyId);
+
+    @Transactional
+    @Modifying
+    @Query("delete from RefreshTokenFamily f where f.expiresAt < :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
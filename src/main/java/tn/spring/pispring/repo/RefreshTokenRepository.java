@@ -0,0 +1,36 @@
+package tn.spring.pispring.repo;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import tn.spring.pispring.Entities.RefreshToken;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface RefreshTokenRepository extends JpaRepository<RefreshToken, String> {
+
+    // Consomme le token : 0 s'il a déjà été utilisé ou révoqué
+    @Transactional
+    @Modifying
+    @Query("update RefreshToken r set r.revoked = true, r.replacedBy = :next where r.jti = :jti and r.revoked = false")
+    int consume(@Param("jti") String jti, @Param("next") String next);
+
+    @Transactional
+    @Modifying
+    @Query("update RefreshToken r set r.revoked = true where r.familyId = :familyId and r.revoked = false")
+    int revokeFamily(@Param("familyId") String familyId);
+
+    // Token ni consommé ni révoqué, dans une famille non révoquée
+    @Query("select case when count(r) > 0 then true else false end from RefreshToken r, RefreshTokenFamily f " +
+            "where r.jti = :jti and r.revoked = false and f.familyId = r.familyId and f.revoked = false")
+    boolean isActive(@Param("jti") String jti);
+
+    @Transactional
+    @Modifying
+    @Query("delete from RefreshToken r where r.expiresAt < :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
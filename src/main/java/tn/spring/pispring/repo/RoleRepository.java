@@ -4,14 +4,21 @@ package tn.spring.pispring.repo;
 
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 import tn.spring.pispring.Entities.Role;
 import tn.spring.pispring.dto.RoleName;
 
+import javax.persistence.QueryHint;
 import java.util.Optional;
 
 @Repository
 public interface RoleRepository extends JpaRepository<Role,Long> {
+    // Résultat gardé dans le cache de requêtes, invalidé par Hibernate à chaque écriture sur role
+    @QueryHints({
+            @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_CACHE_REGION, value = "reference-queries")
+    })
     Optional<Role> findByName(RoleName roleName );
 
 }
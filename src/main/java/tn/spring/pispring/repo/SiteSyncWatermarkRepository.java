@@ -0,0 +1,28 @@
+package tn.spring.pispring.repo;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import tn.spring.pispring.Entities.SiteSyncWatermark;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface SiteSyncWatermarkRepository extends JpaRepository<SiteSyncWatermark, String> {
+
+    @Transactional
+    @Modifying
+    @Query("update SiteSyncWatermark w set w.claimedBy = :node, w.claimedUntil = :until " +
+            "where w.siteId = :siteId and (w.claimedUntil is null or w.claimedUntil < :now or w.claimedBy = :node)")
+    int claim(@Param("siteId") String siteId, @Param("node") String node,
+              @Param("now") LocalDateTime now, @Param("until") LocalDateTime until);
+
+    @Transactional
+    @Modifying
+    @Query("update SiteSyncWatermark w set w.claimedBy = null, w.claimedUntil = null " +
+            "where w.siteId = :siteId and w.claimedBy = :node")
+    int release(@Param("siteId") String siteId, @Param("node") String node);
+}
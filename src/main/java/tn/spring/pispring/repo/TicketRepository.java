@@ -1,12 +1,23 @@
 package tn.spring.pispring.repo;
 
 import tn.spring.pispring.Entities.Ticket;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import tn.spring.pispring.Entities.User;
+import tn.spring.pispring.dto.TicketSummary;
 
+import javax.persistence.QueryHint;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface TicketRepository extends JpaRepository<Ticket,Long> {
@@ -15,6 +26,101 @@ public interface TicketRepository extends JpaRepository<Ticket,Long> {
     Ticket findByAssetId(String assetId);
     List<Ticket> findByStatus(Ticket.TicketStatus status);
     List<Ticket> findBySiteName(String siteName);
+    boolean existsBySiteName(String siteName);
     Ticket findTicketById(Long Id);
 
+    // Variantes pour les endpoints qui sérialisent des tickets complets : graphe Ticket.listing,
+    // doublons de la jointure sur l'historique retirés en mémoire plutôt que par un DISTINCT SQL
+    @EntityGraph(Ticket.LISTING_GRAPH)
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_PASS_DISTINCT_THROUGH, value = "false"))
+    @Query("select distinct t from Ticket t")
+    List<Ticket> findAllForListing();
+
+    @EntityGraph(Ticket.LISTING_GRAPH)
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_PASS_DISTINCT_THROUGH, value = "false"))
+    List<Ticket> findDistinctBySiteName(String siteName);
+
+    @EntityGraph(Ticket.LISTING_GRAPH)
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_PASS_DISTINCT_THROUGH, value = "false"))
+    List<Ticket> findDistinctByAssetIdIn(List<String> assetIds);
+
+    @EntityGraph(Ticket.LISTING_GRAPH)
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_PASS_DISTINCT_THROUGH, value = "false"))
+    List<Ticket> findDistinctByUser(User user);
+
+    @EntityGraph(Ticket.LISTING_GRAPH)
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_PASS_DISTINCT_THROUGH, value = "false"))
+    List<Ticket> findDistinctByStatus(Ticket.TicketStatus status);
+
+    // Tickets assignés dont le SLA a expiré sans notification, parcourus par id croissant
+    @Query("select t.id from Ticket t " +
+            "where t.user is not null and t.slaNotificationSent = false and t.status <> :closed and t.slaDeadline < :now and t.id > :afterId " +
+            "order by t.id")
+    List<Long> findSlaDueIds(@Param("closed") Ticket.TicketStatus closed,
+                             @Param("now") LocalDateTime now,
+                             @Param("afterId") Long afterId,
+                             Pageable pageable);
+
+    // Réserve en une requête les notifications d'une page : seuls les tickets pas encore notifiés reçoivent le jeton
+    @Transactional
+    @Modifying
+    @Query("update Ticket t set t.slaNotificationSent = true, t.slaClaimToken = :token " +
+            "where t.id in :ids and t.slaNotificationSent = false")
+    int claimSlaNotifications(@Param("ids") List<Long> ids, @Param("token") String token);
+
+    // Tickets réservés par claimSlaNotifications, avec leur assigné
+    @Query("select t from Ticket t join fetch t.user where t.slaClaimToken = :token order by t.id")
+    List<Ticket> findBySlaClaimToken(@Param("token") String token);
+
+    // Réserve l'envoi de la notification SLA : 0 si elle a déjà été envoyée
+    @Transactional
+    @Modifying
+    @Query("update Ticket t set t.slaNotificationSent = true where t.id = :id and t.slaNotificationSent = false")
+    int claimSlaNotification(@Param("id") Long id);
+
+    @Transactional
+    @Modifying
+    @Query("update Ticket t set t.slaNotificationSent = false where t.id = :id")
+    int releaseSlaNotification(@Param("id") Long id);
+
+    // Échéances SLA en attente (id, slaDeadline), rechargées au démarrage
+    @Query("select t.id, t.slaDeadline from Ticket t " +
+            "where t.slaNotificationSent = false and t.status <> :closed and t.slaDeadline is not null " +
+            "and t.user is not null and t.id > :afterId order by t.id")
+    List<Object[]> findPendingSlaDeadlines(@Param("closed") Ticket.TicketStatus closed,
+                                           @Param("afterId") Long afterId,
+                                           Pageable pageable);
+
+    // Page de tickets après un curseur (id), projetée en DTO ; chaque filtre null est ignoré
+    @Query("select new tn.spring.pispring.dto.TicketSummary(t.id, t.assetId, t.severity, t.status, t.siteName, " +
+            "t.archived, t.slaDeadline, u.id, u.username) " +
+            "from Ticket t left join t.user u " +
+            "where t.id > :afterId " +
+            "and (:status is null or t.status = :status) " +
+            "and (:severity is null or t.severity = :severity) " +
+            "and (:siteName is null or t.siteName = :siteName) " +
+            "and (:assigneeId is null or u.id = :assigneeId) " +
+            "and (:archived is null or t.archived = :archived) " +
+            "order by t.id")
+    List<TicketSummary> findSummaries(@Param("afterId") Long afterId,
+                                      @Param("status") Ticket.TicketStatus status,
+                                      @Param("severity") String severity,
+                                      @Param("siteName") String siteName,
+                                      @Param("assigneeId") Long assigneeId,
+                                      @Param("archived") Boolean archived,
+                                      Pageable pageable);
+
+    // Export en flux : curseur en lecture seule, lignes lues par paquets de fetch size
+    @QueryHints({
+            @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = EXPORT_FETCH_SIZE),
+            @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_READONLY, value = "true")
+    })
+    @Query("select new tn.spring.pispring.dto.TicketSummary(t.id, t.assetId, t.severity, t.status, t.siteName, " +
+            "t.archived, t.slaDeadline, u.id, u.username) " +
+            "from Ticket t left join t.user u order by t.id")
+    Stream<TicketSummary> streamSummaries();
+
+    // Avec MySQL, Integer.MIN_VALUE fait lire le résultat ligne par ligne au lieu de le charger en entier
+    String EXPORT_FETCH_SIZE = "" + Integer.MIN_VALUE;
+
 }
@@ -4,10 +4,14 @@ package tn.spring.pispring.repo;
 
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import tn.spring.pispring.Entities.Role;
 import tn.spring.pispring.Entities.User;
 
+import javax.persistence.QueryHint;
 import java.util.List;
 import java.util.Optional;
 
@@ -20,8 +24,27 @@ public interface UserRepository extends JpaRepository<User,Long> {
 
     boolean existsByEmail(String email);
 
+    // Listes de référence (sélection d'assignation, utilisateurs par rôle) servies par le cache de requêtes
+    @Override
+    @QueryHints({
+            @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_CACHE_REGION, value = "reference-queries")
+    })
+    List<User> findAll();
+
+    @QueryHints({
+            @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_CACHE_REGION, value = "reference-queries")
+    })
     List<User> findByRolesContains(Role role);
     User findUserById(Long id);
 
+    // Connexion par username ou email en une requête, rôles compris
+    @Query("select distinct u from User u left join fetch u.roles where u.username = :login or u.email = :login")
+    List<User> findByUsernameOrEmailWithRoles(@Param("login") String login);
+
+    @Query("select u.tokenVersion from User u where u.id = :id")
+    Optional<Long> findTokenVersionById(@Param("id") Long id);
+
 
 }
@@ -0,0 +1,8 @@
+-- Expiration de l'OTP en horodatage complet : l'ancienne colonne DATE tronquait les 5 minutes au jour.
+-- Les OTP existants reprennent leur ancienne date.
+
+alter table otp add column expires_at datetime(6);
+update otp set expires_at = expired_date;
+alter table otp drop column expired_date;
+create index idx_otp_identification on otp (identification);
+create index idx_otp_expires_at on otp (expires_at);
@@ -0,0 +1,11 @@
+-- Index des chemins d'accès aux tickets (TicketRepository) et à leur historique.
+-- user_id est déjà couvert par l'index de la clé étrangère fk_ticket_user.
+
+-- findByAssetId, findTicketsByAssetIdIn (ingestion)
+create index idx_ticket_asset_id on ticket (asset_id);
+-- findBySiteName, existsBySiteName
+create index idx_ticket_site_name on ticket (site_name);
+-- findByStatus, filtre status du listing
+create index idx_ticket_status on ticket (status);
+-- historique d'un ticket dans l'ordre chronologique
+create index idx_ticket_status_history_ticket_date on ticket_status_history (ticket_id, change_date);
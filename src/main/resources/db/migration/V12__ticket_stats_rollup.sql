@@ -0,0 +1,18 @@
+-- Compteurs de tickets par (site, sévérité, statut, assigné), tenus à jour avec les écritures de tickets.
+-- Les valeurs absentes sont stockées en '' / 0 pour que la clé unique s'applique.
+
+create table ticket_stats_rollup (
+    id bigint not null auto_increment,
+    site_name varchar(255) not null default '',
+    severity varchar(255) not null default '',
+    status varchar(32) not null default '',
+    assignee_id bigint not null default 0,
+    ticket_count bigint not null default 0,
+    primary key (id),
+    constraint uk_ticket_stats_rollup_group unique (site_name, severity, status, assignee_id)
+);
+
+insert into ticket_stats_rollup (site_name, severity, status, assignee_id, ticket_count)
+select coalesce(site_name, ''), coalesce(severity, ''), coalesce(status, ''), coalesce(user_id, 0), count(*)
+from ticket
+group by coalesce(site_name, ''), coalesce(severity, ''), coalesce(status, ''), coalesce(user_id, 0);
@@ -0,0 +1,26 @@
+-- Indicateurs de résolution matérialisés par jour de résolution et par dimension
+-- (ALL, SEVERITY, SITE, USER). Les histogrammes sont des compteurs creux "bucket:count,..."
+-- sur une échelle logarithmique : ils se fusionnent entre jours pour les percentiles.
+
+create table ticket_analytics_daily (
+    id bigint not null auto_increment,
+    stat_day date not null,
+    dimension varchar(16) not null,
+    dimension_value varchar(255) not null,
+    resolve_count bigint not null default 0,
+    resolve_seconds_sum bigint not null default 0,
+    resolve_histogram text not null,
+    open_count bigint not null default 0,
+    open_seconds_sum bigint not null default 0,
+    open_histogram text not null,
+    in_progress_count bigint not null default 0,
+    in_progress_seconds_sum bigint not null default 0,
+    in_progress_histogram text not null,
+    sla_evaluated bigint not null default 0,
+    sla_breached bigint not null default 0,
+    primary key (id),
+    constraint uk_ticket_analytics_daily unique (stat_day, dimension, dimension_value)
+);
+
+-- Retrouve les tickets résolus sur une période sans parcourir tout l'historique
+create index idx_ticket_status_history_status_date on ticket_status_history (status, change_date);
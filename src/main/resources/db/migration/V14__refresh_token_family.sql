@@ -0,0 +1,18 @@
+-- Révocation des familles de refresh tokens en base : une rotation concurrente d'une déconnexion
+-- ne peut plus émettre de successeur valide. Les familles déjà en circulation sont reprises actives,
+-- leurs tokens consommés ou révoqués restant refusés individuellement.
+
+create table refresh_token_family (
+    family_id varchar(255) not null,
+    username varchar(255),
+    revoked bit not null,
+    expires_at datetime(6),
+    primary key (family_id)
+);
+create index idx_refresh_token_family_expiry on refresh_token_family (expires_at);
+
+insert into refresh_token_family (family_id, username, revoked, expires_at)
+select family_id, max(username), false, max(expires_at)
+from refresh_token
+where family_id is not null
+group by family_id;
@@ -0,0 +1,5 @@
+-- Réservation par page des notifications SLA : checkTicketsSLA pose son jeton sur tous les tickets
+-- encore à notifier en une requête, puis relit ceux qu'il a obtenus par ce jeton.
+
+alter table ticket add column sla_claim_token varchar(36);
+create index idx_ticket_sla_claim_token on ticket (sla_claim_token);
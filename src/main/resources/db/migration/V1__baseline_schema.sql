@@ -0,0 +1,79 @@
+-- Schéma tel que produit par ddl-auto=update avant l'introduction de Flyway.
+-- Les bases existantes sont marquées à cette version (spring.flyway.baseline-on-migrate) sans l'exécuter :
+-- tout ajout ultérieur va dans sa propre migration, jamais ici.
+
+create table hibernate_sequence (next_val bigint);
+insert into hibernate_sequence values (1);
+
+create table role (
+    id bigint not null auto_increment,
+    name varchar(60),
+    primary key (id),
+    constraint uk_role_name unique (name)
+);
+
+create table user (
+    id bigint not null,
+    name varchar(255),
+    lastname varchar(255),
+    username varchar(255),
+    email varchar(255),
+    password varchar(255),
+    address varchar(255),
+    number integer not null,
+    blocked bit not null,
+    valid bit not null,
+    token varchar(255),
+    image varchar(255),
+    primary key (id)
+);
+
+create table user_roles (
+    user_id bigint not null,
+    role_id bigint not null,
+    primary key (user_id, role_id),
+    constraint fk_user_roles_user foreign key (user_id) references user (id),
+    constraint fk_user_roles_role foreign key (role_id) references role (id)
+);
+
+create table vulnerability (
+    idv bigint not null auto_increment,
+    description varchar(255),
+    severity varchar(255),
+    degre varchar(255),
+    primary key (idv)
+);
+
+create table ticket (
+    id bigint not null auto_increment,
+    asset_id varchar(255),
+    description varchar(255),
+    severity varchar(255),
+    remediation varchar(255),
+    site_name varchar(255),
+    status varchar(255),
+    archived bit not null,
+    sla_deadline datetime(6),
+    sla_notification_sent bit not null,
+    vulnerability_idv bigint,
+    user_id bigint,
+    primary key (id),
+    constraint fk_ticket_vulnerability foreign key (vulnerability_idv) references vulnerability (idv),
+    constraint fk_ticket_user foreign key (user_id) references user (id)
+);
+
+create table ticket_status_history (
+    id bigint not null auto_increment,
+    status varchar(255),
+    change_date datetime(6),
+    ticket_id bigint,
+    primary key (id),
+    constraint fk_ticket_status_history_ticket foreign key (ticket_id) references ticket (id)
+);
+
+create table otp (
+    id bigint not null,
+    identification varchar(255),
+    expired_date date,
+    primary key (id)
+);
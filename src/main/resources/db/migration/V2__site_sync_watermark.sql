@@ -0,0 +1,11 @@
+-- Filigrane de synchronisation par site (lastScanTime déjà traité) et réservation du site par un nœud.
+
+create table site_sync_watermark (
+    site_id varchar(255) not null,
+    site_name varchar(255),
+    last_scan_time varchar(255),
+    last_synced_at datetime(6),
+    claimed_by varchar(255),
+    claimed_until datetime(6),
+    primary key (site_id)
+);
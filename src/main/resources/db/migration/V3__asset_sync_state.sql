@@ -0,0 +1,14 @@
+-- Empreinte des vulnérabilités de chaque asset au dernier passage : un asset inchangé n'est pas retraité.
+-- last_seen_at date le dernier passage où l'asset figurait dans son site : la synchronisation par fenêtres
+-- retire en fin de passage les assets non revus, sans garder la liste complète en mémoire.
+
+create table asset_sync_state (
+    id bigint not null auto_increment,
+    site_id varchar(255),
+    asset_id varchar(255),
+    vulnerability_fingerprint varchar(255),
+    vulnerability_ids longtext,
+    last_seen_at datetime(6),
+    primary key (id),
+    constraint uk_asset_sync_state_site_asset unique (site_id, asset_id)
+);
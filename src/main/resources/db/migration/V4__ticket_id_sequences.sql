@@ -0,0 +1,8 @@
+-- Identifiants des tickets et de leur historique pré-alloués par blocs (tables de séquence Hibernate),
+-- démarrés au-dessus des IDs déjà générés en IDENTITY.
+
+create table ticket_seq (next_val bigint);
+insert into ticket_seq (next_val) select coalesce(max(id), 0) + 1 from ticket;
+
+create table ticket_status_history_seq (next_val bigint);
+insert into ticket_status_history_seq (next_val) select coalesce(max(id), 0) + 1 from ticket_status_history;
@@ -0,0 +1,3 @@
+-- Tickets dont l'échéance SLA est passée et pas encore notifiés (EmailService.checkTicketsSLA)
+
+create index idx_ticket_sla_due on ticket (sla_notification_sent, status, sla_deadline);
@@ -0,0 +1,18 @@
+-- File d'envoi persistante des mails. claim_token : jeton du nœud qui a réservé le mail,
+-- posé avec un bail sur next_attempt_at avant l'envoi pour qu'un même mail ne parte pas depuis deux instances.
+
+create table mail_outbox (
+    id bigint not null auto_increment,
+    recipient varchar(255),
+    subject varchar(255),
+    body longtext,
+    status varchar(255),
+    attempts integer not null,
+    created_at datetime(6),
+    next_attempt_at datetime(6),
+    sent_at datetime(6),
+    last_error varchar(1000),
+    claim_token varchar(36),
+    primary key (id)
+);
+create index idx_mail_outbox_due on mail_outbox (status, next_attempt_at);
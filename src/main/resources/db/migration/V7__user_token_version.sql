@@ -0,0 +1,3 @@
+-- Version des tokens d'un utilisateur : les access tokens portant une version plus ancienne sont refusés
+
+alter table user add column token_version bigint not null default 0;
@@ -0,0 +1,14 @@
+-- Registre des refresh tokens émis, chaînés par famille de rotation
+
+create table refresh_token (
+    jti varchar(255) not null,
+    family_id varchar(255),
+    username varchar(255),
+    issued_at datetime(6),
+    expires_at datetime(6),
+    revoked bit not null,
+    replaced_by varchar(255),
+    primary key (jti)
+);
+create index idx_refresh_token_family on refresh_token (family_id);
+create index idx_refresh_token_expiry on refresh_token (expires_at);
@@ -0,0 +1,4 @@
+-- Connexion par nom d'utilisateur ou email : index uniques pour la recherche en une requête
+
+alter table user add constraint uk_user_username unique (username);
+alter table user add constraint uk_user_email unique (email);
@@ -0,0 +1,111 @@
+package tn.spring.pispring.ServiceIMP;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import tn.spring.pispring.Entities.Ticket;
+import tn.spring.pispring.Entities.User;
+import tn.spring.pispring.repo.TicketRepository;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Assigning a ticket inside a transaction: the SLA deadline is set on the ticket the caller
+ * returns and publishes, and the timing wheel only receives it once the transaction commits.
+ * The periodic SLA check claims each page of due tickets with a single update.
+ */
+class EmailServiceTest {
+
+    private TicketRepository ticketRepository;
+    private MailDispatcher mailDispatcher;
+    private EmailService emailService;
+
+    @BeforeEach
+    void setUp() {
+        ticketRepository = mock(TicketRepository.class);
+        emailService = new EmailService();
+        ReflectionTestUtils.setField(emailService, "ticketRepo", ticketRepository);
+        mailDispatcher = mock(MailDispatcher.class);
+        ReflectionTestUtils.setField(emailService, "mailDispatcher", mailDispatcher);
+        ReflectionTestUtils.setField(emailService, "slaCheckPageSize", 3);
+        ReflectionTestUtils.setField(emailService, "slaWheelTickMs", 1000L);
+        ReflectionTestUtils.setField(emailService, "slaWheelSize", 64);
+        emailService.startSlaWheel();
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    @AfterEach
+    void tearDown() {
+        TransactionSynchronizationManager.clearSynchronization();
+        emailService.stopSlaWheel();
+    }
+
+    @Test
+    void assignmentSetsTheDeadlineOnTheTicketAndSchedulesAfterCommit() {
+        Ticket ticket = new Ticket("asset-1", "Severe", "description", "remediation");
+        ticket.setId(42L);
+        ticket.setSlaNotificationSent(true);
+        User user = new User();
+        user.setEmail("alice@example.com");
+        LocalDateTime before = LocalDateTime.now();
+
+        emailService.sendEmailOnTicketAssignment(ticket, user);
+
+        assertFalse(ticket.isSlaNotificationSent());
+        assertFalse(ticket.getSlaDeadline().isBefore(before.plusMinutes(5)));
+        verify(ticketRepository).save(ticket);
+        assertEquals(0, emailService.getPendingSlaCount());
+
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCommit();
+        }
+        assertEquals(1, emailService.getPendingSlaCount());
+    }
+
+    @Test
+    void slaCheckClaimsEachPageInOneUpdateAndMailsWhatItGot() {
+        List<Long> page = Arrays.asList(1L, 2L, 3L);
+        when(ticketRepository.findSlaDueIds(eq(Ticket.TicketStatus.CLOSED), any(), eq(0L), any())).thenReturn(page);
+        when(ticketRepository.findSlaDueIds(eq(Ticket.TicketStatus.CLOSED), any(), eq(3L), any())).thenReturn(Collections.emptyList());
+        when(ticketRepository.claimSlaNotifications(eq(page), anyString())).thenReturn(2);
+        // Ticket 2 was notified in the meantime by the wheel: only 1 and 3 carry the token
+        when(ticketRepository.findBySlaClaimToken(anyString())).thenReturn(Arrays.asList(assigned(1L), assigned(3L)));
+
+        emailService.checkTicketsSLA();
+
+        ArgumentCaptor<String> token = ArgumentCaptor.forClass(String.class);
+        verify(ticketRepository, times(1)).claimSlaNotifications(eq(page), token.capture());
+        verify(ticketRepository).findBySlaClaimToken(token.getValue());
+        verify(mailDispatcher).enqueue(eq("user1@example.com"), eq("SLA Expiry: Ticket 1"), anyString());
+        verify(mailDispatcher).enqueue(eq("user3@example.com"), eq("SLA Expiry: Ticket 3"), anyString());
+        verify(mailDispatcher, times(2)).enqueue(anyString(), anyString(), anyString());
+        verify(ticketRepository, never()).claimSlaNotification(any());
+    }
+
+    private static Ticket assigned(long id) {
+        Ticket ticket = new Ticket("asset-" + id, "Critical", "description", "remediation");
+        ticket.setId(id);
+        User user = new User();
+        user.setEmail("user" + id + "@example.com");
+        ticket.setUser(user);
+        return ticket;
+    }
+}
@@ -0,0 +1,150 @@
+package tn.spring.pispring.ServiceIMP;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestTemplate;
+import tn.spring.pispring.Interfaces.InsightVMClient;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares the blocking and async InsightVM clients on the same workload against a local stub,
+ * which gzips its answers for clients that ask for it.
+ */
+class InsightVMClientBenchmarkTest {
+
+    private static final int CALLS = 1000;
+    private static final int STUB_LATENCY_MS = 20;
+    private static final String BODY = "{\"id\":\"stub\",\"severity\":\"Moderate\"}";
+
+    private HttpServer stub;
+    private ScheduledExecutorService delays;
+    private CountDownLatch release;
+    private String baseUrl;
+
+    @BeforeEach
+    void startStub() throws IOException {
+        delays = Executors.newScheduledThreadPool(4);
+        release = new CountDownLatch(1);
+        stub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 512);
+        stub.setExecutor(Executors.newFixedThreadPool(8));
+        // Answers after the stub latency without holding a server thread during the wait
+        stub.createContext("/api/3/vulnerabilities", exchange -> delays.schedule(() -> respond(exchange),
+                STUB_LATENCY_MS, TimeUnit.MILLISECONDS));
+        // Answers only once the test releases it
+        stub.createContext("/api/3/held", exchange -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            respond(exchange);
+        });
+        stub.start();
+        baseUrl = "http://127.0.0.1:" + stub.getAddress().getPort() + "/api/3";
+    }
+
+    @AfterEach
+    void stopStub() {
+        stub.stop(0);
+        delays.shutdownNow();
+    }
+
+    @Test
+    void compareBlockingAndAsyncClients() {
+        InsightVMCrawler crawler = new InsightVMCrawler(16, 64, 16, 1);
+        AsyncInsightVMClient asyncClient = asyncClient();
+        try {
+            double blocking = run(new BlockingInsightVMClient(new RestTemplate(), crawler, "user", "password"));
+            double async = run(asyncClient);
+            System.out.printf("InsightVM clients, %d calls at %d ms: blocking (16 threads) %.1f req/s, async (2 threads) %.1f req/s%n",
+                    CALLS, STUB_LATENCY_MS, blocking, async);
+
+            // Blocking tops out at 16 calls per stub latency; async is limited by the stub itself, about 1.8x here
+            assertTrue(async >= 1.3 * blocking, "async " + async + " req/s vs blocking " + blocking + " req/s");
+        } finally {
+            asyncClient.shutdown();
+            crawler.shutdown();
+        }
+    }
+
+    @Test
+    void asyncClientDecodesGzipAndHandsResponsesToTheParsePool() {
+        AsyncInsightVMClient asyncClient = asyncClient();
+        try {
+            // Warm-up: the first call initialises the HTTP client on the calling thread
+            assertEquals(BODY, asyncClient.getAsync(baseUrl + "/vulnerabilities/0").join());
+
+            CompletableFuture<String> body = asyncClient.getAsync(baseUrl + "/held");
+            // Attached before the stub answers: runs on the thread that completes the call
+            CompletableFuture<String> thread = body.thenApply(ignored -> Thread.currentThread().getName());
+            release.countDown();
+
+            // Joined first: a thread waiting on body itself may run its pending dependents
+            String completedOn = thread.join();
+            assertTrue(completedOn.startsWith("insightvm-parse-"), completedOn);
+            assertEquals(BODY, body.join());
+        } finally {
+            asyncClient.shutdown();
+        }
+    }
+
+    private static void respond(HttpExchange exchange) {
+        try (OutputStream out = exchange.getResponseBody()) {
+            byte[] body = BODY.getBytes(StandardCharsets.UTF_8);
+            String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                body = gzip(body);
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            out.write(body);
+        } catch (IOException e) {
+            exchange.close();
+        }
+    }
+
+    private static AsyncInsightVMClient asyncClient() {
+        return new AsyncInsightVMClient("user", "password", 2, 256, 4, 5000, 30000, true);
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(body);
+        }
+        return compressed.toByteArray();
+    }
+
+    private double run(InsightVMClient client) {
+        long start = System.nanoTime();
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < CALLS; i++) {
+            futures.add(client.getAsync(baseUrl + "/vulnerabilities/" + i));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        long elapsed = System.nanoTime() - start;
+
+        assertEquals(CALLS, futures.size());
+        futures.forEach(future -> assertEquals(BODY, future.join()));
+        return CALLS / (elapsed / 1e9);
+    }
+}
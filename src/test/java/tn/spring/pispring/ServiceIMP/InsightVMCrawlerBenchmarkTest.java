@@ -0,0 +1,112 @@
+package tn.spring.pispring.ServiceIMP;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Throughput of the crawler against a local InsightVM stub that answers every call after a fixed delay.
+ */
+class InsightVMCrawlerBenchmarkTest {
+
+    private static final int CALLS = 160;
+    private static final int STUB_LATENCY_MS = 5;
+    private static final int PER_HOST_LIMIT = 8;
+    // Well below the PER_HOST_LIMIT-fold ideal, so the check holds on a loaded build machine
+    private static final double MIN_SPEEDUP = 3.0;
+
+    private HttpServer stub;
+    private String baseUrl;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    @BeforeEach
+    void startStub() throws IOException {
+        stub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        stub.setExecutor(Executors.newFixedThreadPool(32));
+        stub.createContext("/api/3/vulnerabilities", exchange -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(STUB_LATENCY_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = "{\"id\":\"stub\",\"severity\":\"Severe\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+            inFlight.decrementAndGet();
+        });
+        stub.start();
+        baseUrl = "http://127.0.0.1:" + stub.getAddress().getPort() + "/api/3";
+    }
+
+    @AfterEach
+    void stopStub() {
+        stub.stop(0);
+    }
+
+    @Test
+    void parallelCrawlBeatsSequentialAndRespectsHostLimit() {
+        long sequentialStart = System.nanoTime();
+        for (int i = 0; i < CALLS; i++) {
+            get(baseUrl + "/vulnerabilities/" + i);
+        }
+        long sequentialNanos = System.nanoTime() - sequentialStart;
+
+        maxInFlight.set(0);
+        // One host: fetch threads beyond its permits would only wait on the semaphore
+        InsightVMCrawler crawler = new InsightVMCrawler(PER_HOST_LIMIT, 64, PER_HOST_LIMIT, 1);
+        try {
+            long parallelStart = System.nanoTime();
+            List<CompletableFuture<String>> futures = new ArrayList<>();
+            for (int i = 0; i < CALLS; i++) {
+                String url = baseUrl + "/vulnerabilities/" + i;
+                futures.add(crawler.fetch(url, () -> get(url)));
+            }
+            List<String> bodies = crawler.join(crawler.fetchAll(futures));
+            long parallelNanos = System.nanoTime() - parallelStart;
+
+            double speedup = (double) sequentialNanos / parallelNanos;
+            System.out.printf("InsightVM crawl of %d calls: sequential %.1f req/s, parallel %.1f req/s (x%.1f)%n",
+                    CALLS, CALLS / (sequentialNanos / 1e9), CALLS / (parallelNanos / 1e9), speedup);
+
+            assertEquals(CALLS, bodies.size());
+            assertTrue(maxInFlight.get() <= PER_HOST_LIMIT, "per-host limit exceeded: " + maxInFlight.get());
+            assertTrue(speedup >= MIN_SPEEDUP, "parallel crawl only x" + speedup + " faster than sequential");
+        } finally {
+            crawler.shutdown();
+        }
+    }
+
+    private static String get(String url) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            try (InputStream in = connection.getInputStream()) {
+                return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            } finally {
+                connection.disconnect();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package tn.spring.pispring.ServiceIMP;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import tn.spring.pispring.Interfaces.InsightVMClient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Pages through an InsightVM list without blocking: every page is requested through getAsync,
+ * following the page numbers and the "next" links, and a missing page fails the whole listing.
+ */
+class InsightVMResourceIteratorTest {
+
+    private static final String URL = "https://insightvm.local/api/3/assets/7/vulnerabilities";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void collectsEveryPageThroughTheAsyncClient() {
+        PagedClient client = new PagedClient();
+        client.pages.put(URL + "?page=0&size=2",
+                "{\"resources\":[{\"id\":\"a\"},{\"id\":\"b\"}],\"page\":{\"number\":0,\"totalPages\":3}}");
+        client.pages.put(URL + "?page=1&size=2",
+                "{\"resources\":[{\"id\":\"c\"},{\"id\":\"d\"}],\"page\":{\"number\":1,\"totalPages\":3}," +
+                        "\"links\":[{\"href\":\"" + URL + "?page=2&size=2&cursor=x\",\"rel\":\"next\"}]}");
+        client.pages.put(URL + "?page=2&size=2&cursor=x",
+                "{\"resources\":[{\"id\":\"e\"}],\"page\":{\"number\":2,\"totalPages\":3}}");
+
+        List<String> ids = InsightVMResourceIterator.collectAsync(client, URL, 2, mapper, InsightVMResourceIterator.ID_READER).join();
+
+        assertEquals(Arrays.asList("a", "b", "c", "d", "e"), ids);
+        assertEquals(3, client.requested.size());
+    }
+
+    @Test
+    void missingPageFailsTheListing() {
+        PagedClient client = new PagedClient();
+        client.pages.put(URL + "?page=0&size=2",
+                "{\"resources\":[{\"id\":\"a\"},{\"id\":\"b\"}],\"page\":{\"number\":0,\"totalPages\":2}}");
+
+        assertNull(InsightVMResourceIterator.collectAsync(client, URL, 2, mapper, InsightVMResourceIterator.ID_READER).join());
+    }
+
+    // Answers from a fixed set of pages; a blocking read would be a regression
+    private static class PagedClient implements InsightVMClient {
+        final Map<String, String> pages = new HashMap<>();
+        final List<String> requested = new ArrayList<>();
+
+        @Override
+        public CompletableFuture<String> getAsync(String url) {
+            requested.add(url);
+            return CompletableFuture.supplyAsync(() -> pages.get(url));
+        }
+
+        @Override
+        public <R> R read(String url, BodyReader<R> reader) {
+            throw new AssertionError("blocking read of " + url);
+        }
+    }
+}
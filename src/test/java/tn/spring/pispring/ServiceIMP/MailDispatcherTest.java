@@ -0,0 +1,184 @@
+package tn.spring.pispring.ServiceIMP;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import tn.spring.pispring.Entities.MailOutbox;
+import tn.spring.pispring.repo.MailOutboxRepository;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs the outbox dispatcher against a minimal local SMTP stand-in.
+ */
+class MailDispatcherTest {
+
+    private ServerSocket smtp;
+    private Thread smtpThread;
+    private final AtomicInteger connections = new AtomicInteger();
+    private final List<String> recipients = new CopyOnWriteArrayList<>();
+
+    private MailOutboxRepository repository;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        smtp = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        smtpThread = new Thread(this::serveSmtp, "smtp-stub");
+        smtpThread.setDaemon(true);
+        smtpThread.start();
+        repository = mock(MailOutboxRepository.class);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        smtp.close();
+    }
+
+    @Test
+    void sendsBatchOverOneConnectionAndGroupsByRecipient() {
+        List<MailOutbox> batch = Arrays.asList(
+                mail(1L, "alice@example.com"),
+                mail(2L, "bob@example.com"),
+                mail(3L, "alice@example.com"));
+        whenDue(batch);
+
+        dispatcher(smtp.getLocalPort()).dispatch();
+
+        assertEquals(1, connections.get());
+        assertEquals(Arrays.asList("alice@example.com", "bob@example.com"), recipients);
+        batch.forEach(mail -> {
+            assertEquals(MailOutbox.MailStatus.SENT, mail.getStatus());
+            assertEquals(1, mail.getAttempts());
+        });
+    }
+
+    @Test
+    void reschedulesWithBackoffWhenSmtpIsDown() throws IOException {
+        int closedPort = smtp.getLocalPort();
+        smtp.close();
+        MailOutbox mail = mail(1L, "alice@example.com");
+        whenDue(Collections.singletonList(mail));
+
+        LocalDateTime before = LocalDateTime.now();
+        dispatcher(closedPort).dispatch();
+
+        assertEquals(MailOutbox.MailStatus.PENDING, mail.getStatus());
+        assertEquals(1, mail.getAttempts());
+        assertTrue(mail.getNextAttemptAt().isAfter(before.plusSeconds(29)));
+    }
+
+    @Test
+    void skipsMailsClaimedByAnotherNode() {
+        MailOutbox mail = mail(1L, "alice@example.com");
+        when(repository.findDueIds(eq(MailOutbox.MailStatus.PENDING), any(), any()))
+                .thenReturn(Collections.singletonList(1L));
+        // Another instance moved the lease forward between the read and the claim
+        when(repository.claim(any(), any(), any(), anyString(), any())).thenReturn(0);
+
+        dispatcher(smtp.getLocalPort()).dispatch();
+
+        assertEquals(0, connections.get());
+        assertEquals(MailOutbox.MailStatus.PENDING, mail.getStatus());
+        verify(repository, never()).findByClaimTokenOrderByIdAsc(anyString());
+    }
+
+    @Test
+    void leasesClaimedMailsBeyondTheRetryDelay() {
+        whenDue(Collections.singletonList(mail(1L, "alice@example.com")));
+        LocalDateTime before = LocalDateTime.now();
+
+        dispatcher(smtp.getLocalPort()).dispatch();
+
+        ArgumentCaptor<LocalDateTime> leaseUntil = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(repository).claim(any(), any(), any(), anyString(), leaseUntil.capture());
+        assertTrue(leaseUntil.getValue().isAfter(before.plusSeconds(299)));
+    }
+
+    private MailDispatcher dispatcher(int port) {
+        JavaMailSenderImpl sender = new JavaMailSenderImpl();
+        sender.setHost("127.0.0.1");
+        sender.setPort(port);
+        return new MailDispatcher(repository, sender, "secureflow@example.com", 100, 6, 30, 300);
+    }
+
+    private void whenDue(List<MailOutbox> batch) {
+        List<Long> ids = batch.stream().map(MailOutbox::getId).collect(Collectors.toList());
+        when(repository.findDueIds(eq(MailOutbox.MailStatus.PENDING), any(), any()))
+                .thenReturn(ids)
+                .thenReturn(Collections.emptyList());
+        when(repository.claim(eq(ids), eq(MailOutbox.MailStatus.PENDING), any(), anyString(), any())).thenReturn(batch.size());
+        when(repository.findByClaimTokenOrderByIdAsc(anyString())).thenReturn(new ArrayList<>(batch));
+    }
+
+    private MailOutbox mail(Long id, String recipient) {
+        MailOutbox mail = new MailOutbox(recipient, "Ticket " + id, "Body " + id);
+        mail.setId(id);
+        return mail;
+    }
+
+    // Just enough SMTP for JavaMail: greets, accepts every command and swallows DATA
+    private void serveSmtp() {
+        while (!smtp.isClosed()) {
+            try (Socket socket = smtp.accept();
+                 BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+                 PrintWriter out = new PrintWriter(socket.getOutputStream(), true)) {
+                connections.incrementAndGet();
+                out.print("220 stub\r\n");
+                out.flush();
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String command = line.toUpperCase();
+                    if (command.startsWith("EHLO") || command.startsWith("HELO")) {
+                        out.print("250 stub\r\n");
+                    } else if (command.startsWith("RCPT TO:")) {
+                        recipients.add(line.substring(line.indexOf('<') + 1, line.indexOf('>')));
+                        out.print("250 OK\r\n");
+                    } else if (command.equals("DATA")) {
+                        out.print("354 End data with <CR><LF>.<CR><LF>\r\n");
+                        out.flush();
+                        while ((line = in.readLine()) != null && !line.equals(".")) {
+                            // message content ignored
+                        }
+                        out.print("250 OK\r\n");
+                    } else if (command.equals("QUIT")) {
+                        out.print("221 Bye\r\n");
+                        out.flush();
+                        break;
+                    } else {
+                        out.print("250 OK\r\n");
+                    }
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // socket closed by the test
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package tn.spring.pispring.ServiceIMP;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import tn.spring.pispring.config.JWT.JwtProvider;
+import tn.spring.pispring.repo.RefreshTokenFamilyRepository;
+import tn.spring.pispring.repo.RefreshTokenRepository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs refresh-token rotation against the migrated schema: each token is single-use, replaying
+ * one revokes its family, and a family revoked in the database (by another node) stops both
+ * rotation and validation.
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:refresh-tokens;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.database-platform=org.hibernate.dialect.MySQL57Dialect",
+        "spring.jpa.hibernate.ddl-auto=validate",
+        "spring.jpa.properties.hibernate.cache.use_second_level_cache=false",
+        "spring.jpa.properties.hibernate.cache.use_query_cache=false",
+        "cryptoserver.app.jwtSecret=c2VjcmV0LWtleS1mb3ItdGVzdHM="
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({RefreshTokenService.class, JwtProvider.class})
+class RefreshTokenServiceTest {
+
+    @Autowired
+    RefreshTokenService refreshTokenService;
+    @Autowired
+    RefreshTokenRepository refreshTokenRepository;
+    @Autowired
+    RefreshTokenFamilyRepository refreshTokenFamilyRepository;
+    @Autowired
+    JwtProvider jwtProvider;
+
+    @Test
+    void rotationReplacesTheTokenOnce() {
+        String first = refreshTokenService.issue("alice");
+
+        String second = refreshTokenService.rotate(first);
+
+        assertNotNull(second);
+        assertFalse(refreshTokenService.isValid(first));
+        assertTrue(refreshTokenService.isValid(second));
+    }
+
+    @Test
+    void replayingAConsumedTokenRevokesTheFamily() {
+        String first = refreshTokenService.issue("alice");
+        String second = refreshTokenService.rotate(first);
+
+        assertNull(refreshTokenService.rotate(first));
+
+        assertFalse(refreshTokenService.isValid(second));
+        assertNull(refreshTokenService.rotate(second));
+    }
+
+    @Test
+    void familyRevokedInTheDatabaseStopsRotationAndValidation() {
+        String token = refreshTokenService.issue("alice");
+        long tokens = refreshTokenRepository.count();
+        // Logout committed by another node: only the family row knows
+        refreshTokenFamilyRepository.revoke(familyOf(token));
+
+        assertFalse(refreshTokenService.isValid(token));
+        assertNull(refreshTokenService.rotate(token));
+        assertEquals(tokens, refreshTokenRepository.count());
+    }
+
+    @Test
+    void logoutRevokesEveryTokenOfTheFamily() {
+        String first = refreshTokenService.issue("alice");
+        String second = refreshTokenService.rotate(first);
+        String other = refreshTokenService.issue("alice");
+
+        assertTrue(refreshTokenService.revoke(second));
+
+        assertFalse(refreshTokenService.isValid(second));
+        assertNull(refreshTokenService.rotate(second));
+        assertTrue(refreshTokenService.isValid(other));
+    }
+
+    private String familyOf(String token) {
+        return jwtProvider.getClaimsFromJwtToken(token).get(JwtProvider.FAMILY_CLAIM, String.class);
+    }
+}
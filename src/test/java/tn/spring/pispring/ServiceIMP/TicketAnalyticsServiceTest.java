@@ -0,0 +1,95 @@
+package tn.spring.pispring.ServiceIMP;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks how a report splits its window between materialised days and days computed from the
+ * history, one analysis per contiguous run of missing days.
+ */
+class TicketAnalyticsServiceTest {
+
+    private static final TicketHistoryAnalyzer.Key ALL = new TicketHistoryAnalyzer.Key(TicketHistoryAnalyzer.Dimension.ALL, "");
+    private static final TicketHistoryAnalyzer.Key CRITICAL = new TicketHistoryAnalyzer.Key(TicketHistoryAnalyzer.Dimension.SEVERITY, "Critical");
+    private static final TicketHistoryAnalyzer.Key SITE = new TicketHistoryAnalyzer.Key(TicketHistoryAnalyzer.Dimension.SITE, "Tunis");
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void computesOnlyTheDaysMissingFromTheDailyTable() {
+        LocalDate d0 = LocalDate.now().minusDays(10);
+        LocalDate d1 = d0.plusDays(1);
+        LocalDate d2 = d0.plusDays(2);
+        LocalDate d4 = d0.plusDays(4);
+
+        TicketHistoryAnalyzer analyzer = mock(TicketHistoryAnalyzer.class);
+        when(analyzer.loadDaily(eq(d0), eq(d0.plusDays(3)), eq(TicketHistoryAnalyzer.Dimension.SEVERITY), any()))
+                .thenAnswer(invocation -> {
+                    ((Set<LocalDate>) invocation.getArgument(3)).add(d1);
+                    Map<TicketHistoryAnalyzer.Key, TicketHistoryAnalyzer.Aggregate> daily = new HashMap<>();
+                    daily.put(ALL, resolved(600));
+                    daily.put(CRITICAL, resolved(600));
+                    return daily;
+                });
+        when(analyzer.analyze(any(), any())).thenAnswer(invocation -> {
+            Map<TicketHistoryAnalyzer.Key, TicketHistoryAnalyzer.Aggregate> computed = new HashMap<>();
+            computed.put(ALL, resolved(60));
+            computed.put(CRITICAL, resolved(60));
+            computed.put(SITE, resolved(60));
+            return computed;
+        });
+
+        TicketAnalyticsService service = new TicketAnalyticsService();
+        service.ticketHistoryAnalyzer = analyzer;
+        ReflectionTestUtils.setField(service, "maxWindowDays", 366);
+
+        Map<String, Object> report = service.getReport(d0, d0.plusDays(3), TicketHistoryAnalyzer.Dimension.SEVERITY);
+
+        // d1 is materialised: [d0, d1[ and [d2, d4[ are computed, each in a single pass
+        verify(analyzer).analyze(d0.atStartOfDay(), d1.atStartOfDay());
+        verify(analyzer).analyze(d2.atStartOfDay(), d4.atStartOfDay());
+        verify(analyzer, times(2)).analyze(any(), any());
+        assertEquals(1, report.get("materializedDays"));
+        assertEquals(3, report.get("computedDays"));
+        assertEquals(3L, ((Map<String, Object>) report.get("total")).get("resolved"));
+        Map<String, Object> groups = (Map<String, Object>) report.get("groups");
+        assertEquals(Collections.singleton("Critical"), groups.keySet());
+        assertEquals(3L, ((Map<String, Object>) groups.get("Critical")).get("resolved"));
+    }
+
+    @Test
+    void clampsTheWindowToTheConfiguredMaximum() {
+        TicketHistoryAnalyzer analyzer = mock(TicketHistoryAnalyzer.class);
+        when(analyzer.loadDaily(any(), any(), any(), any())).thenReturn(new HashMap<>());
+        when(analyzer.analyze(any(), any())).thenReturn(new HashMap<>());
+        TicketAnalyticsService service = new TicketAnalyticsService();
+        service.ticketHistoryAnalyzer = analyzer;
+        ReflectionTestUtils.setField(service, "maxWindowDays", 7);
+        LocalDate to = LocalDate.now().minusDays(1);
+
+        Map<String, Object> report = service.getReport(to.minusDays(100), to, TicketHistoryAnalyzer.Dimension.ALL);
+
+        assertEquals(to.minusDays(6).toString(), report.get("from"));
+        assertEquals(7, report.get("computedDays"));
+        verify(analyzer).analyze(to.minusDays(6).atStartOfDay(), to.plusDays(1).atStartOfDay());
+    }
+
+    private static TicketHistoryAnalyzer.Aggregate resolved(long seconds) {
+        TicketHistoryAnalyzer.Aggregate aggregate = new TicketHistoryAnalyzer.Aggregate();
+        aggregate.getResolve().add(seconds);
+        return aggregate;
+    }
+}
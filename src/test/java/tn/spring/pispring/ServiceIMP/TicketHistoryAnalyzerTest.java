@@ -0,0 +1,171 @@
+package tn.spring.pispring.ServiceIMP;
+
+import org.junit.jupiter.api.Test;
+import tn.spring.pispring.Entities.Ticket;
+import tn.spring.pispring.dto.TicketTransition;
+import tn.spring.pispring.repo.HistoryRepository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks the histogram math, its storage format and the per-ticket timeline rules of the
+ * single-pass history analysis.
+ */
+class TicketHistoryAnalyzerTest {
+
+    private static final LocalDate DAY = LocalDate.of(2024, 3, 10);
+    private static final LocalDateTime T0 = DAY.atTime(8, 0);
+
+    @Test
+    void distributionKeepsExactCountSumAndMean() {
+        TicketHistoryAnalyzer.Distribution distribution = new TicketHistoryAnalyzer.Distribution();
+        distribution.add(10);
+        distribution.add(20);
+        distribution.add(-5); // clamped to zero
+
+        assertEquals(3, distribution.getCount());
+        assertEquals(30, distribution.getSum());
+        assertEquals(10.0, distribution.mean(), 1e-9);
+        assertEquals(0, distribution.percentile(0.01));
+    }
+
+    @Test
+    void percentilesStayWithinFivePercentOfTheExactRank() {
+        TicketHistoryAnalyzer.Distribution distribution = new TicketHistoryAnalyzer.Distribution();
+        for (long seconds = 1; seconds <= 10000; seconds++) {
+            distribution.add(seconds);
+        }
+
+        for (double p : new double[]{0.01, 0.25, 0.50, 0.90, 0.95, 0.99, 1.0}) {
+            long exact = (long) Math.ceil(p * 10000);
+            long estimate = distribution.percentile(p);
+            assertTrue(Math.abs(estimate - exact) <= 0.05 * exact, "p" + p + ": " + estimate + " vs " + exact);
+        }
+    }
+
+    @Test
+    void emptyDistributionReportsZeros() {
+        TicketHistoryAnalyzer.Distribution distribution = new TicketHistoryAnalyzer.Distribution();
+
+        assertEquals(0.0, distribution.mean(), 0.0);
+        assertEquals(0, distribution.percentile(0.99));
+        assertEquals("", distribution.encode());
+    }
+
+    @Test
+    void hugeDurationsLandInTheLastBucket() {
+        TicketHistoryAnalyzer.Distribution distribution = new TicketHistoryAnalyzer.Distribution();
+        distribution.add(Long.MAX_VALUE / 2);
+
+        assertTrue(distribution.encode().startsWith("255:"));
+    }
+
+    @Test
+    void mergingMatchesAddingEverythingToOneDistribution() {
+        TicketHistoryAnalyzer.Distribution left = new TicketHistoryAnalyzer.Distribution();
+        TicketHistoryAnalyzer.Distribution right = new TicketHistoryAnalyzer.Distribution();
+        TicketHistoryAnalyzer.Distribution all = new TicketHistoryAnalyzer.Distribution();
+        for (long seconds = 0; seconds < 500; seconds += 7) {
+            (seconds % 2 == 0 ? left : right).add(seconds);
+            all.add(seconds);
+        }
+
+        left.merge(right);
+
+        assertEquals(all.getCount(), left.getCount());
+        assertEquals(all.getSum(), left.getSum());
+        assertEquals(all.encode(), left.encode());
+    }
+
+    @Test
+    void encodedHistogramRoundTrips() {
+        TicketHistoryAnalyzer.Distribution distribution = new TicketHistoryAnalyzer.Distribution();
+        for (long seconds : new long[]{0, 0, 1, 59, 3600, 3600, 86400, 604800}) {
+            distribution.add(seconds);
+        }
+
+        TicketHistoryAnalyzer.Distribution decoded = TicketHistoryAnalyzer.Distribution.decode(
+                distribution.getCount(), distribution.getSum(), distribution.encode());
+
+        assertEquals(distribution.encode(), decoded.encode());
+        assertEquals(distribution.toMap(), decoded.toMap());
+        assertEquals(0, TicketHistoryAnalyzer.Distribution.decode(0, 0, null).getCount());
+    }
+
+    @Test
+    void timelineStopsAtTheFirstResolutionAndIgnoresReopening() {
+        TicketHistoryAnalyzer analyzer = analyzerOver(
+                transition(1L, Ticket.TicketStatus.OPEN, T0, T0.plusHours(4)),
+                transition(1L, Ticket.TicketStatus.IN_PROGRESS, T0.plusHours(1), T0.plusHours(4)),
+                transition(1L, Ticket.TicketStatus.RESOLVED, T0.plusHours(3), T0.plusHours(4)),
+                transition(1L, Ticket.TicketStatus.OPEN, T0.plusHours(5), T0.plusHours(4)),
+                transition(1L, Ticket.TicketStatus.CLOSED, T0.plusHours(6), T0.plusHours(4)));
+
+        TicketHistoryAnalyzer.Aggregate all = analyzer.analyze(DAY.atStartOfDay(), DAY.plusDays(1).atStartOfDay())
+                .get(new TicketHistoryAnalyzer.Key(TicketHistoryAnalyzer.Dimension.ALL, ""));
+
+        assertEquals(1, all.getResolve().getCount());
+        assertEquals(3 * 3600, all.getResolve().getSum());
+        assertEquals(3600, all.getOpen().getSum());
+        assertEquals(2 * 3600, all.getInProgress().getSum());
+        assertEquals(1, all.getSlaEvaluated());
+        assertEquals(0, all.getSlaBreached());
+    }
+
+    @Test
+    void ticketFirstResolvedBeforeTheWindowIsNotCountedAgain() {
+        LocalDateTime dayBefore = T0.minusDays(1);
+        TicketHistoryAnalyzer analyzer = analyzerOver(
+                transition(2L, Ticket.TicketStatus.OPEN, dayBefore, null),
+                transition(2L, Ticket.TicketStatus.RESOLVED, dayBefore.plusHours(1), null),
+                transition(2L, Ticket.TicketStatus.OPEN, T0, null),
+                transition(2L, Ticket.TicketStatus.CLOSED, T0.plusHours(1), null));
+
+        assertTrue(analyzer.analyze(DAY.atStartOfDay(), DAY.plusDays(1).atStartOfDay()).isEmpty());
+    }
+
+    @Test
+    void resolutionAfterTheDeadlineIsABreachGroupedByDimension() {
+        TicketHistoryAnalyzer analyzer = analyzerOver(
+                transition(3L, Ticket.TicketStatus.OPEN, T0, T0.plusMinutes(30)),
+                transition(3L, Ticket.TicketStatus.CLOSED, T0.plusHours(1), T0.plusMinutes(30)),
+                transition(4L, Ticket.TicketStatus.OPEN, T0, null),
+                transition(4L, Ticket.TicketStatus.RESOLVED, T0.plusHours(2), null));
+
+        Map<TicketHistoryAnalyzer.Key, TicketHistoryAnalyzer.Aggregate> aggregates =
+                analyzer.analyze(DAY.atStartOfDay(), DAY.plusDays(1).atStartOfDay());
+
+        TicketHistoryAnalyzer.Aggregate all = aggregates.get(new TicketHistoryAnalyzer.Key(TicketHistoryAnalyzer.Dimension.ALL, ""));
+        assertEquals(2, all.getResolve().getCount());
+        assertEquals(1, all.getSlaEvaluated());
+        assertEquals(1, all.getSlaBreached());
+        assertEquals(2, aggregates.get(new TicketHistoryAnalyzer.Key(TicketHistoryAnalyzer.Dimension.SEVERITY, "Critical"))
+                .getResolve().getCount());
+        assertEquals(2, aggregates.get(new TicketHistoryAnalyzer.Key(TicketHistoryAnalyzer.Dimension.USER, "none"))
+                .getResolve().getCount());
+        assertFalse(aggregates.containsKey(new TicketHistoryAnalyzer.Key(TicketHistoryAnalyzer.Dimension.SITE, "")));
+    }
+
+    private static TicketHistoryAnalyzer analyzerOver(TicketTransition... transitions) {
+        HistoryRepository historyRepository = mock(HistoryRepository.class);
+        when(historyRepository.streamTransitionsOfTicketsReaching(any(), any(), any()))
+                .thenAnswer(invocation -> Arrays.stream(transitions));
+        TicketHistoryAnalyzer analyzer = new TicketHistoryAnalyzer();
+        analyzer.historyRepository = historyRepository;
+        return analyzer;
+    }
+
+    private static TicketTransition transition(Long ticketId, Ticket.TicketStatus status, LocalDateTime at, LocalDateTime slaDeadline) {
+        return new TicketTransition(ticketId, status, at, "Critical", null, null, slaDeadline);
+    }
+}
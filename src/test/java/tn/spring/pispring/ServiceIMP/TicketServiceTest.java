@@ -0,0 +1,77 @@
+package tn.spring.pispring.ServiceIMP;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import tn.spring.pispring.Entities.Ticket;
+import tn.spring.pispring.repo.TicketRepository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Closing a ticket inside a transaction: the in-memory SLA deadline is only dropped once the
+ * transaction commits, and a failing write reaches the caller instead of being swallowed.
+ */
+class TicketServiceTest {
+
+    private TicketRepository ticketRepository;
+    private EmailService emailService;
+    private TicketStatsService ticketStatsService;
+    private TicketService ticketService;
+    private Ticket ticket;
+
+    @BeforeEach
+    void setUp() {
+        ticketRepository = mock(TicketRepository.class);
+        emailService = mock(EmailService.class);
+        ticketStatsService = mock(TicketStatsService.class);
+        ticketService = new TicketService();
+        ticketService.ticketRepository = ticketRepository;
+        ReflectionTestUtils.setField(ticketService, "emailService", emailService);
+        ReflectionTestUtils.setField(ticketService, "ticketStatsService", ticketStatsService);
+        ReflectionTestUtils.setField(ticketService, "ticketEventBus", mock(TicketEventBus.class));
+
+        ticket = new Ticket("asset-1", "Critical", "description", "remediation");
+        ticket.setId(42L);
+        when(ticketRepository.findTicketById(42L)).thenReturn(ticket);
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    @AfterEach
+    void clearSynchronization() {
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    @Test
+    void slaIsCancelledOnlyAfterCommit() {
+        ticketService.updateTicketStatusByticketId(42L, Ticket.TicketStatus.CLOSED);
+
+        verify(emailService, never()).cancelSla(any());
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCommit();
+        }
+        verify(emailService).cancelSla(42L);
+    }
+
+    @Test
+    void failedWriteReachesTheCaller() {
+        doThrow(new IllegalStateException("rollup unavailable")).when(ticketStatsService).recordChanged(any(), any());
+
+        IllegalStateException error = assertThrows(IllegalStateException.class,
+                () -> ticketService.updateTicketStatusByticketId(42L, Ticket.TicketStatus.CLOSED));
+
+        assertEquals("rollup unavailable", error.getMessage());
+        assertEquals(0, TransactionSynchronizationManager.getSynchronizations().size());
+        verify(emailService, never()).cancelSla(any());
+    }
+}
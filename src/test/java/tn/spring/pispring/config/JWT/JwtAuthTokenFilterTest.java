@@ -0,0 +1,191 @@
+package tn.spring.pispring.config.JWT;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import tn.spring.pispring.Entities.UserPrinciple;
+import tn.spring.pispring.ServiceIMP.TokenVersionCache;
+import tn.spring.pispring.ServiceIMP.UserDetailsServiceImpl;
+import tn.spring.pispring.repo.UserRepository;
+
+import javax.servlet.ServletException;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs the access-token filter on stateless tokens: a token is accepted while its version is the
+ * user's current one and rejected with a 401 once the version has been bumped. Refresh tokens
+ * never authenticate a request.
+ */
+class JwtAuthTokenFilterTest {
+
+    private static final long USER_ID = 7L;
+
+    private UserRepository userRepository;
+    private JwtProvider jwtProvider;
+    private UserDetailsServiceImpl userDetailsService;
+    private JwtAuthTokenFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        jwtProvider = new JwtProvider();
+        ReflectionTestUtils.setField(jwtProvider, "jwtSecret", "c2VjcmV0LWtleS1mb3ItdGVzdHM=");
+        ReflectionTestUtils.setField(jwtProvider, "verifiedTokenCacheSize", 100);
+        jwtProvider.init();
+
+        userRepository = mock(UserRepository.class);
+        TokenVersionCache tokenVersionCache = new TokenVersionCache(100, 30);
+        ReflectionTestUtils.setField(tokenVersionCache, "userRepository", userRepository);
+
+        userDetailsService = mock(UserDetailsServiceImpl.class);
+
+        filter = new JwtAuthTokenFilter();
+        ReflectionTestUtils.setField(filter, "userDetailsService", userDetailsService);
+        ReflectionTestUtils.setField(filter, "tokenProvider", jwtProvider);
+        ReflectionTestUtils.setField(filter, "tokenVersionCache", tokenVersionCache);
+        ReflectionTestUtils.setField(filter, "authEntryPoint", new JwtAuthEntryPoint());
+        ReflectionTestUtils.setField(filter, "statelessAuth", true);
+    }
+
+    @AfterEach
+    void clearContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void acceptsTokenWithCurrentVersion() throws IOException, ServletException {
+        when(userRepository.findTokenVersionById(USER_ID)).thenReturn(Optional.of(1L));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(request(token(1L, true)), response, chain);
+
+        assertEquals(200, response.getStatus());
+        assertNotNull(chain.getRequest());
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        assertNotNull(authentication);
+        UserPrinciple principal = (UserPrinciple) authentication.getPrincipal();
+        assertEquals(USER_ID, principal.getId());
+        assertEquals("alice@example.com", principal.getEmail());
+        assertTrue(principal.isEnabled());
+    }
+
+    @Test
+    void carriesUnverifiedAccountFromClaims() throws IOException, ServletException {
+        when(userRepository.findTokenVersionById(USER_ID)).thenReturn(Optional.of(1L));
+
+        filter.doFilter(request(token(1L, false)), new MockHttpServletResponse(), new MockFilterChain());
+
+        UserPrinciple principal = (UserPrinciple) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        assertFalse(principal.isEnabled());
+    }
+
+    @Test
+    void rejectsTokenWhoseVersionWasBumped() throws IOException, ServletException {
+        // Password changed after the token was issued: the stored version moved to 2
+        when(userRepository.findTokenVersionById(USER_ID)).thenReturn(Optional.of(2L));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(request(token(1L, true)), response, chain);
+
+        assertEquals(401, response.getStatus());
+        assertNull(chain.getRequest());
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    @Test
+    void rejectsTokenOfDeletedUser() throws IOException, ServletException {
+        when(userRepository.findTokenVersionById(USER_ID)).thenReturn(Optional.empty());
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request(token(0L, true)), response, new MockFilterChain());
+
+        assertEquals(401, response.getStatus());
+    }
+
+    @Test
+    void rejectsRefreshTokenUsedAsAccessToken() throws IOException, ServletException {
+        when(userRepository.findTokenVersionById(USER_ID)).thenReturn(Optional.of(1L));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(request(refreshToken()), response, chain);
+
+        assertEquals(401, response.getStatus());
+        assertNull(chain.getRequest());
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    @Test
+    void refreshedAccessTokenCarriesTheFullClaimSet() throws IOException, ServletException {
+        when(userRepository.findTokenVersionById(USER_ID)).thenReturn(Optional.of(1L));
+        when(userDetailsService.loadUserByUsername("alice")).thenReturn(principal(1L, true));
+
+        String accessToken = filter.issueNewAccessToken(refreshToken());
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request(accessToken), response, new MockFilterChain());
+
+        assertEquals(200, response.getStatus());
+        UserPrinciple principal = (UserPrinciple) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        assertEquals(USER_ID, principal.getId());
+        assertEquals(1L, principal.getTokenVersion());
+    }
+
+    @Test
+    void accessTokenIsNotExchangedForAnotherOne() {
+        assertNull(filter.issueNewAccessToken(token(1L, true)));
+    }
+
+    @Test
+    void letsRequestsWithoutTokenThrough() throws IOException, ServletException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/tickets"), response, chain);
+
+        assertEquals(200, response.getStatus());
+        assertNotNull(chain.getRequest());
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    private String token(long tokenVersion, boolean verified) {
+        UserPrinciple principal = principal(tokenVersion, verified);
+        return jwtProvider.generateAccessToken(
+                new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities()));
+    }
+
+    private String refreshToken() {
+        return jwtProvider.generateRefreshToken("alice", "jti-1", "family-1",
+                new Date(System.currentTimeMillis() + 60_000));
+    }
+
+    private static UserPrinciple principal(long tokenVersion, boolean verified) {
+        return new UserPrinciple(USER_ID, "Alice", "alice", "alice@example.com", null,
+                Collections.singletonList(new SimpleGrantedAuthority("NORMAL")), verified, tokenVersion);
+    }
+
+    private static MockHttpServletRequest request(String token) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/tickets");
+        request.addHeader("Authorization", "access " + token);
+        return request;
+    }
+}
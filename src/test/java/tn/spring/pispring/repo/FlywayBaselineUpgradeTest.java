@@ -0,0 +1,123 @@
+package tn.spring.pispring.repo;
+
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.MigrationInfo;
+import org.flywaydb.core.api.MigrationType;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.boot.orm.jpa.hibernate.SpringImplicitNamingStrategy;
+import org.springframework.boot.orm.jpa.hibernate.SpringPhysicalNamingStrategy;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.type.filter.AnnotationTypeFilter;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+
+import javax.persistence.Entity;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Upgrades a database left by ddl-auto=update before Flyway: it is baselined at V1 as in
+ * production, every later migration must apply on top of it, and Hibernate must then validate
+ * all entities against the result.
+ */
+class FlywayBaselineUpgradeTest {
+
+    private static final String URL = "jdbc:h2:mem:baseline-upgrade;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+    private static Connection connection;
+    private static Flyway flyway;
+
+    @BeforeAll
+    static void upgrade() throws SQLException {
+        connection = DriverManager.getConnection(URL, "sa", "");
+        ScriptUtils.executeSqlScript(connection, new ClassPathResource("db/pre-flyway-schema.sql"));
+        flyway = Flyway.configure().dataSource(URL, "sa", "")
+                .baselineOnMigrate(true)
+                .baselineVersion("1")
+                .load();
+        flyway.migrate();
+    }
+
+    @AfterAll
+    static void close() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    void baselinesAtV1AndAppliesEveryLaterMigration() {
+        MigrationInfo[] applied = flyway.info().applied();
+        assertEquals(MigrationType.BASELINE, applied[0].getType());
+        assertEquals("1", applied[0].getVersion().getVersion());
+        for (MigrationInfo migration : applied) {
+            assertFalse(migration.getState().isFailed(), migration::getScript);
+        }
+        assertEquals(0, flyway.info().pending().length);
+        MigrationInfo[] all = flyway.info().all();
+        assertEquals(all[all.length - 1].getVersion(), flyway.info().current().getVersion());
+        flyway.validate();
+    }
+
+    @Test
+    void hibernateValidatesEveryEntityAgainstTheUpgradedSchema() {
+        StandardServiceRegistry registry = new StandardServiceRegistryBuilder()
+                .applySetting(AvailableSettings.URL, URL)
+                .applySetting(AvailableSettings.USER, "sa")
+                .applySetting(AvailableSettings.PASS, "")
+                .applySetting(AvailableSettings.DIALECT, "org.hibernate.dialect.MySQL57Dialect")
+                .applySetting(AvailableSettings.HBM2DDL_AUTO, "validate")
+                .applySetting(AvailableSettings.PHYSICAL_NAMING_STRATEGY, SpringPhysicalNamingStrategy.class.getName())
+                .applySetting(AvailableSettings.IMPLICIT_NAMING_STRATEGY, SpringImplicitNamingStrategy.class.getName())
+                .applySetting(AvailableSettings.USE_SECOND_LEVEL_CACHE, "false")
+                .build();
+        try {
+            MetadataSources sources = new MetadataSources(registry);
+            ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false);
+            scanner.addIncludeFilter(new AnnotationTypeFilter(Entity.class));
+            for (BeanDefinition entity : scanner.findCandidateComponents("tn.spring.pispring")) {
+                sources.addAnnotatedClassName(entity.getBeanClassName());
+            }
+            // Throws SchemaManagementException on the first missing or mistyped table or column
+            SessionFactory sessionFactory = sources.buildMetadata().buildSessionFactory();
+            assertNotNull(sessionFactory);
+            sessionFactory.close();
+        } finally {
+            StandardServiceRegistryBuilder.destroy(registry);
+        }
+    }
+
+    @Test
+    void ticketSequencesStartAboveTheExistingIds() throws SQLException {
+        assertEquals(8L, single("select next_val from ticket_seq"));
+        assertEquals(13L, single("select next_val from ticket_status_history_seq"));
+    }
+
+    @Test
+    void existingRowsSurviveTheUpgrade() throws SQLException {
+        assertEquals(0L, single("select token_version from user where id = 1"));
+        assertEquals(3L, single("select count(*) from ticket"));
+        assertEquals(1L, single("select count(*) from otp where expires_at = '2024-03-10 00:00:00'"));
+    }
+
+    private static long single(String query) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery(query)) {
+            result.next();
+            return result.getLong(1);
+        }
+    }
+}
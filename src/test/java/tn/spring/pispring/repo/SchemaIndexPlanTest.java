@@ -0,0 +1,155 @@
+package tn.spring.pispring.repo;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Applies the Flyway migrations to H2 in MySQL mode and checks with EXPLAIN that the
+ * ticket, history, user and OTP lookups go through an index rather than a table scan.
+ */
+class SchemaIndexPlanTest {
+
+    private static final String URL = "jdbc:h2:mem:schema-plan;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+    private static Connection connection;
+
+    @BeforeAll
+    static void migrate() throws SQLException {
+        Flyway.configure().dataSource(URL, "sa", "").load().migrate();
+        connection = DriverManager.getConnection(URL, "sa", "");
+        seed();
+    }
+
+    @AfterAll
+    static void close() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    void ticketByAssetIdUsesIndex() throws SQLException {
+        assertUsesIndex("select * from ticket where asset_id = 'asset-42'", "idx_ticket_asset_id");
+    }
+
+    @Test
+    void ticketsByAssetIdListUseIndex() throws SQLException {
+        assertUsesIndex("select * from ticket where asset_id in ('asset-1', 'asset-2', 'asset-3')", "idx_ticket_asset_id");
+    }
+
+    @Test
+    void ticketsBySiteNameUseIndex() throws SQLException {
+        assertUsesIndex("select * from ticket where site_name = 'site-3'", "idx_ticket_site_name");
+    }
+
+    @Test
+    void ticketsByStatusUseIndex() throws SQLException {
+        assertUsesIndex("select * from ticket where status = 'OPEN'", "idx_ticket_status");
+    }
+
+    @Test
+    void ticketsByUserUseForeignKeyIndex() throws SQLException {
+        assertNoTableScan("select * from ticket where user_id = 7");
+    }
+
+    @Test
+    void historyByTicketAndDateUsesCompositeIndex() throws SQLException {
+        assertUsesIndex("select * from ticket_status_history where ticket_id = 42 and change_date >= '2024-01-01 00:00:00'",
+                "idx_ticket_status_history_ticket_date");
+    }
+
+    @Test
+    void historyByStatusAndDateUsesCompositeIndex() throws SQLException {
+        assertUsesIndex("select ticket_id from ticket_status_history where status in ('RESOLVED', 'CLOSED') " +
+                        "and change_date >= '2024-01-01 00:00:00' and change_date < '2024-01-02 00:00:00'",
+                "idx_ticket_status_history_status_date");
+    }
+
+    @Test
+    void userByUsernameOrEmailUsesUniqueIndexes() throws SQLException {
+        assertUsesIndex("select * from user where username = 'user-7'", "uk_user_username");
+        assertUsesIndex("select * from user where email = 'user-7@example.com'", "uk_user_email");
+    }
+
+    @Test
+    void otpByIdentificationUsesIndex() throws SQLException {
+        assertUsesIndex("select * from otp where identification = '123456'", "idx_otp_identification");
+    }
+
+    private static void assertUsesIndex(String query, String index) throws SQLException {
+        String plan = explain(query);
+        assertTrue(plan.contains(index), () -> "expected " + index + " in plan: " + plan);
+    }
+
+    private static void assertNoTableScan(String query) throws SQLException {
+        String plan = explain(query);
+        assertFalse(plan.contains("tablescan"), () -> "unexpected table scan: " + plan);
+    }
+
+    private static String explain(String query) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet plan = statement.executeQuery("explain " + query)) {
+            StringBuilder text = new StringBuilder();
+            while (plan.next()) {
+                text.append(plan.getString(1)).append('\n');
+            }
+            return text.toString().toLowerCase();
+        }
+    }
+
+    // A few hundred rows so the optimizer has something to weigh an index against
+    private static void seed() throws SQLException {
+        try (PreparedStatement user = connection.prepareStatement(
+                "insert into user (id, username, email, number, blocked, valid, token_version) values (?, ?, ?, 0, false, true, 0)");
+             PreparedStatement ticket = connection.prepareStatement(
+                     "insert into ticket (id, asset_id, site_name, status, archived, sla_notification_sent, user_id) " +
+                             "values (?, ?, ?, ?, false, false, ?)");
+             PreparedStatement history = connection.prepareStatement(
+                     "insert into ticket_status_history (id, status, change_date, ticket_id) values (?, ?, ?, ?)");
+             PreparedStatement otp = connection.prepareStatement(
+                     "insert into otp (id, identification, expires_at) values (?, ?, ?)")) {
+            for (long id = 1; id <= 20; id++) {
+                user.setLong(1, id);
+                user.setString(2, "user-" + id);
+                user.setString(3, "user-" + id + "@example.com");
+                user.addBatch();
+            }
+            user.executeBatch();
+
+            String[] statuses = {"OPEN", "IN_PROGRESS", "RESOLVED", "CLOSED"};
+            for (long id = 1; id <= 500; id++) {
+                ticket.setLong(1, id);
+                ticket.setString(2, "asset-" + id);
+                ticket.setString(3, "site-" + id % 10);
+                ticket.setString(4, statuses[(int) (id % statuses.length)]);
+                ticket.setLong(5, id % 20 + 1);
+                ticket.addBatch();
+
+                history.setLong(1, id);
+                history.setString(2, "OPEN");
+                history.setTimestamp(3, new Timestamp(System.currentTimeMillis() - id * 60_000));
+                history.setLong(4, id);
+                history.addBatch();
+
+                otp.setLong(1, id);
+                otp.setString(2, String.valueOf(100000 + id));
+                otp.setTimestamp(3, new Timestamp(System.currentTimeMillis() + 300_000));
+                otp.addBatch();
+            }
+            ticket.executeBatch();
+            history.executeBatch();
+            otp.executeBatch();
+        }
+    }
+}
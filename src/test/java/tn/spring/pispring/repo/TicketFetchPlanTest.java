@@ -0,0 +1,133 @@
+package tn.spring.pispring.repo;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import tn.spring.pispring.Entities.Role;
+import tn.spring.pispring.Entities.Ticket;
+import tn.spring.pispring.Entities.User;
+import tn.spring.pispring.dto.RoleName;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Counts the SQL statements needed to load and serialise the ticket lists returned by the
+ * listing endpoints: tickets with assignee and history come from one query, assignee roles
+ * from one batched query, whatever the number of tickets.
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:fetch-plan;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.database-platform=org.hibernate.dialect.MySQL57Dialect",
+        "spring.jpa.hibernate.ddl-auto=validate",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "spring.jpa.properties.hibernate.cache.use_second_level_cache=false",
+        "spring.jpa.properties.hibernate.cache.use_query_cache=false"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class TicketFetchPlanTest {
+
+    private static final int TICKETS = 60;
+    private static final int MAX_STATEMENTS = 2;
+
+    @Autowired
+    TestEntityManager entityManager;
+    @Autowired
+    TicketRepository ticketRepository;
+
+    private final ObjectMapper mapper = new ObjectMapper().findAndRegisterModules();
+    private User alice;
+
+    @BeforeEach
+    void seed() {
+        Role normal = entityManager.persist(new Role(null, RoleName.NORMAL));
+        Role admin = entityManager.persist(new Role(null, RoleName.ADMIN));
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            User user = new User("name" + i, "last" + i, "user" + i, "user" + i + "@example.com", "secret", false, "address", true);
+            user.getRoles().add(normal);
+            if (i == 0) {
+                user.getRoles().add(admin);
+            }
+            users.add(entityManager.persist(user));
+        }
+        alice = users.get(0);
+
+        for (int i = 0; i < TICKETS; i++) {
+            Ticket ticket = new Ticket("asset-" + i, "Severe", "description", "remediation");
+            ticket.setSiteName("site-" + i % 3);
+            ticket.setUser(users.get(i % users.size()));
+            ticket.addStatusChange(Ticket.TicketStatus.OPEN);
+            if (i % 2 == 0) {
+                ticket.addStatusChange(Ticket.TicketStatus.CLOSED);
+                ticket.setStatus(Ticket.TicketStatus.CLOSED);
+            }
+            entityManager.persist(ticket);
+        }
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void allTickets() {
+        assertStatements(() -> ticketRepository.findAllForListing(), TICKETS);
+    }
+
+    @Test
+    void ticketsBySiteName() {
+        assertStatements(() -> ticketRepository.findDistinctBySiteName("site-1"), TICKETS / 3);
+    }
+
+    @Test
+    void ticketsBySiteAssets() {
+        List<String> assetIds = new ArrayList<>();
+        for (int i = 0; i < TICKETS; i += 3) {
+            assetIds.add("asset-" + i);
+        }
+        assertStatements(() -> ticketRepository.findDistinctByAssetIdIn(assetIds), assetIds.size());
+    }
+
+    @Test
+    void ticketsByUser() {
+        User user = entityManager.find(User.class, alice.getId());
+        assertStatements(() -> ticketRepository.findDistinctByUser(user), TICKETS / 5);
+    }
+
+    @Test
+    void closedTickets() {
+        assertStatements(() -> ticketRepository.findDistinctByStatus(Ticket.TicketStatus.CLOSED), TICKETS / 2);
+    }
+
+    // Loads and serialises like the controller would, then checks how many statements that took
+    private void assertStatements(Supplier<List<Ticket>> endpoint, int expectedTickets) {
+        Statistics statistics = entityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        List<Ticket> tickets = endpoint.get();
+        String json;
+        try {
+            json = mapper.writeValueAsString(tickets);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+
+        assertEquals(expectedTickets, tickets.size());
+        assertTrue(json.contains("statusHistory"));
+        long statements = statistics.getPrepareStatementCount();
+        assertTrue(statements <= MAX_STATEMENTS, () -> "expected at most " + MAX_STATEMENTS + " statements, got " + statements);
+    }
+}
@@ -0,0 +1,48 @@
+-- Base telle que ddl-auto=update l'a laissée avant Flyway (noms de contraintes générés par Hibernate),
+-- avec quelques lignes pour vérifier les migrations de données.
+
+create table hibernate_sequence (next_val bigint);
+insert into hibernate_sequence values (20);
+
+create table role (id bigint not null auto_increment, name varchar(60), primary key (id));
+alter table role add constraint UK_8sewwnpamngi6b1dwaa88askk unique (name);
+
+create table user (id bigint not null, address varchar(255), blocked bit not null, email varchar(255),
+    image varchar(255), lastname varchar(255), name varchar(255), number integer not null,
+    password varchar(255), token varchar(255), username varchar(255), valid bit not null, primary key (id));
+
+create table user_roles (user_id bigint not null, role_id bigint not null, primary key (user_id, role_id));
+alter table user_roles add constraint FKrhfovtciq1l558cw6udg0h0d3 foreign key (role_id) references role (id);
+alter table user_roles add constraint FK55itppkw3i07do3h7qoclqd4k foreign key (user_id) references user (id);
+
+create table vulnerability (idv bigint not null auto_increment, degre varchar(255), description varchar(255),
+    severity varchar(255), primary key (idv));
+
+create table ticket (id bigint not null auto_increment, archived bit not null, asset_id varchar(255),
+    description varchar(255), remediation varchar(255), severity varchar(255), site_name varchar(255),
+    sla_deadline datetime(6), sla_notification_sent bit not null, status varchar(255), user_id bigint,
+    vulnerability_idv bigint, primary key (id));
+alter table ticket add constraint FKdvt57mcco3ogsosi97odw563o foreign key (user_id) references user (id);
+alter table ticket add constraint FK6c2f4yh3b1m5kwyd2mu5pfvjo foreign key (vulnerability_idv) references vulnerability (idv);
+
+create table ticket_status_history (id bigint not null auto_increment, change_date datetime(6),
+    status varchar(255), ticket_id bigint, primary key (id));
+alter table ticket_status_history add constraint FKq3b1m6pe9ukb8dm3m6qbefyvb foreign key (ticket_id) references ticket (id);
+
+create table otp (id bigint not null, expired_date date, identification varchar(255), primary key (id));
+
+insert into role (id, name) values (1, 'ADMIN'), (2, 'NORMAL');
+insert into user (id, blocked, email, name, number, username, valid) values
+    (1, false, 'alice@example.com', 'Alice', 0, 'alice', true),
+    (2, false, 'bob@example.com', 'Bob', 0, 'bob', true);
+insert into user_roles (user_id, role_id) values (1, 1), (2, 2);
+insert into ticket (id, archived, asset_id, severity, site_name, sla_notification_sent, status, user_id) values
+    (1, false, 'asset-1', 'Critical', 'Tunis', false, 'OPEN', 1),
+    (2, false, 'asset-2', 'Severe', 'Tunis', false, 'IN_PROGRESS', 2),
+    (7, true, 'asset-3', 'Moderate', 'Sfax', false, 'CLOSED', null);
+insert into ticket_status_history (id, change_date, status, ticket_id) values
+    (1, '2024-03-10 08:00:00', 'OPEN', 1),
+    (2, '2024-03-10 08:00:00', 'OPEN', 2),
+    (3, '2024-03-10 09:00:00', 'IN_PROGRESS', 2),
+    (12, '2024-03-11 10:00:00', 'CLOSED', 7);
+insert into otp (id, expired_date, identification) values (3, '2024-03-10', 'alice@example.com');